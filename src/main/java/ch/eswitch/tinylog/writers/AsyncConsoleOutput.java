@@ -0,0 +1,385 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import org.tinylog.provider.InternalLogger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Non-blocking console output for {@link MaskedConsoleWriter}<br/>
+ * Rendered log entries are handed over to a bounded queue, which is drained by a dedicated thread. If the console
+ * stalls and the queue is full, the {@link OverflowPolicy} decides whether the logging thread blocks or which log
+ * entry is dropped. The number of dropped log entries is reported periodically by a summary line.
+ */
+final class AsyncConsoleOutput
+{
+    /**
+     * Behavior if the queue is full
+     */
+    enum OverflowPolicy
+    {
+        /**
+         * logging thread waits until there is space in the queue
+         */
+        BLOCK,
+        /**
+         * oldest log entry with the lowest level is dropped, if its level is not higher than the new log entry
+         */
+        DROP_LOWEST,
+        /**
+         * new log entry is dropped
+         */
+        DROP_NEWEST;
+
+        /**
+         * @param value policy name, e.g. "drop lowest"
+         * @return parsed policy
+         * @throws IllegalArgumentException unknown policy name
+         */
+        static OverflowPolicy parse(final String value)
+        {
+            return valueOf(value.trim().replaceAll("[\\s-]+", "_").toUpperCase(Locale.ROOT));
+        }
+    }
+
+    /**
+     * default maximum number of log entries in the queue
+     */
+    static final int DEFAULT_CAPACITY = 8192;
+
+    /**
+     * default interval for reporting dropped log entries
+     */
+    static final Duration DEFAULT_SUMMARY_INTERVAL = Duration.ofMinutes(1);
+
+    /**
+     * maximum number of log entries written by the drain thread before the output is flushed
+     */
+    private static final int BATCH_SIZE = 1024;
+
+    private static final Level[] LEVELS = {Level.TRACE, Level.DEBUG, Level.INFO, Level.WARN, Level.ERROR};
+
+    /**
+     * queued log entry
+     */
+    private static final class Item
+    {
+        final long sequence;
+        final boolean toErr;
+        final String text;
+
+        Item(final long sequence, final boolean toErr, final String text)
+        {
+            this.sequence = sequence;
+            this.toErr = toErr;
+            this.text = text;
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * one queue per level, to find log entries with the lowest level quickly
+     */
+    private final ArrayDeque<Item>[] queues;
+
+    /**
+     * number of dropped log entries per level since the last summary
+     */
+    private final long[] dropped = new long[LEVELS.length];
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long summaryIntervalNanos;
+    private final boolean summaryToErr;
+
+    /**
+     * batched console output, {@code null} to print to {@link System#out} and {@link System#err}
+     */
+    private final ConsoleChannelOutput channelOutput;
+
+    private final Thread drainThread;
+
+    private int size;
+    private long sequence;
+    private boolean running = true;
+
+    /**
+     * @param capacity maximum number of log entries in the queue
+     * @param policy behavior if the queue is full
+     * @param summaryInterval interval for reporting dropped log entries
+     * @param summaryToErr {@code true} if summary lines are written to stderr
+     * @param channelOutput batched console output or {@code null} to print to {@link System#out} and
+     *            {@link System#err}
+     */
+    @SuppressWarnings("unchecked")
+    AsyncConsoleOutput(final int capacity, final OverflowPolicy policy, final Duration summaryInterval, final boolean summaryToErr, final ConsoleChannelOutput channelOutput)
+    {
+        this.capacity = Math.max(capacity, 1);
+        this.policy = policy;
+        this.summaryIntervalNanos = Math.max(summaryInterval.toNanos(), TimeUnit.SECONDS.toNanos(1));
+        this.summaryToErr = summaryToErr;
+        this.channelOutput = channelOutput;
+
+        queues = new ArrayDeque[LEVELS.length];
+        for (int i = 0; i < queues.length; i++)
+        {
+            queues[i] = new ArrayDeque<>();
+        }
+
+        drainThread = new Thread(this::drain, "tinylog-masked-console");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Hands over a rendered log entry to the drain thread.
+     *
+     * @param level level of log entry
+     * @param toErr {@code true} to write to stderr, {@code false} to write to stdout
+     * @param text rendered log entry
+     */
+    void write(final Level level, final boolean toErr, final String text)
+    {
+        int index = Math.min(level.ordinal(), LEVELS.length - 1);
+
+        lock.lock();
+        try
+        {
+            if (size >= capacity && !makeRoom(index))
+            {
+                dropped[index]++;
+                return;
+            }
+
+            queues[index].addLast(new Item(sequence++, toErr, text));
+            size++;
+            notEmpty.signal();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the drain thread after all queued log entries have been written.
+     *
+     * @throws InterruptedException Interrupted while waiting for the drain thread
+     */
+    void close() throws InterruptedException
+    {
+        lock.lock();
+        try
+        {
+            running = false;
+            notEmpty.signal();
+            notFull.signalAll();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+
+        drainThread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    /**
+     * Makes room in the full queue according to {@link #policy}. Must be called while holding {@link #lock}.
+     *
+     * @param index level index of the new log entry
+     * @return {@code true} if the new log entry can be queued, {@code false} if it must be dropped
+     */
+    private boolean makeRoom(final int index)
+    {
+        switch (policy)
+        {
+            case BLOCK:
+                while (size >= capacity && running)
+                {
+                    try
+                    {
+                        notFull.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                return true;
+
+            case DROP_LOWEST:
+                for (int i = 0; i <= index; i++)
+                {
+                    if (!queues[i].isEmpty())
+                    {
+                        queues[i].pollFirst();
+                        size--;
+                        dropped[i]++;
+                        return true;
+                    }
+                }
+                return false;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Writes queued log entries until the output is closed. Runs in {@link #drainThread}.
+     */
+    private void drain()
+    {
+        List<Item> batch = new ArrayList<>(BATCH_SIZE);
+        long nextSummary = System.nanoTime() + summaryIntervalNanos;
+
+        while (true)
+        {
+            String summary = null;
+            boolean finished;
+
+            lock.lock();
+            try
+            {
+                long wait = nextSummary - System.nanoTime();
+                while (size == 0 && running && wait > 0)
+                {
+                    wait = notEmpty.awaitNanos(wait);
+                }
+
+                takeBatch(batch);
+                notFull.signalAll();
+
+                finished = !running && size == 0;
+                if (finished || System.nanoTime() - nextSummary >= 0)
+                {
+                    summary = createSummary();
+                    nextSummary = System.nanoTime() + summaryIntervalNanos;
+                }
+            }
+            catch (InterruptedException e)
+            {
+                finished = true;
+            }
+            finally
+            {
+                lock.unlock();
+            }
+
+            try
+            {
+                for (Item item : batch)
+                {
+                    print(item.toErr, item.text);
+                }
+
+                if (summary != null)
+                {
+                    print(summaryToErr, summary);
+                }
+
+                if (channelOutput != null)
+                {
+                    channelOutput.flush();
+                }
+            }
+            catch (RuntimeException e)
+            {
+                InternalLogger.log(Level.ERROR, e, "Failed to write to console");
+            }
+
+            batch.clear();
+
+            if (finished)
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Moves queued log entries in chronological order into the passed list. Must be called while holding
+     * {@link #lock}.
+     *
+     * @param batch list for log entries
+     */
+    private void takeBatch(final List<Item> batch)
+    {
+        while (size > 0 && batch.size() < BATCH_SIZE)
+        {
+            ArrayDeque<Item> oldest = null;
+            for (ArrayDeque<Item> queue : queues)
+            {
+                Item head = queue.peekFirst();
+                if (head != null && (oldest == null || head.sequence < oldest.peekFirst().sequence))
+                {
+                    oldest = queue;
+                }
+            }
+
+            batch.add(oldest.pollFirst());
+            size--;
+        }
+    }
+
+    /**
+     * Creates a summary line of all dropped log entries and resets the counters. Must be called while holding
+     * {@link #lock}.
+     *
+     * @return summary line or {@code null} if no log entries have been dropped
+     */
+    private String createSummary()
+    {
+        long total = 0;
+        StringBuilder perLevel = new StringBuilder();
+        for (int i = 0; i < dropped.length; i++)
+        {
+            if (dropped[i] > 0)
+            {
+                total += dropped[i];
+                perLevel.append(perLevel.length() > 0 ? ", " : "").append(LEVELS[i]).append(": ").append(dropped[i]);
+                dropped[i] = 0;
+            }
+        }
+
+        if (total == 0)
+        {
+            return null;
+        }
+
+        return String.format("%s WARN: masked console writer dropped %d log entries (%s), console output is too slow%n", Instant.now(), total, perLevel);
+    }
+
+    /**
+     * @param toErr {@code true} to write to stderr, {@code false} to write to stdout
+     * @param text text to write
+     */
+    private void print(final boolean toErr, final String text)
+    {
+        if (channelOutput != null)
+        {
+            channelOutput.write(toErr, text);
+        }
+        else if (toErr)
+        {
+            System.err.print(text);
+        }
+        else
+        {
+            System.out.print(text);
+        }
+    }
+
+}
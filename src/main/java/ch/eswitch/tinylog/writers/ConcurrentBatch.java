@@ -0,0 +1,113 @@
+package ch.eswitch.tinylog.writers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free batch of elements for multiple producers and one or more consumers<br/>
+ * Producers add elements with one compare-and-set without blocking each other. A consumer takes the whole batch
+ * atomically with {@link #takeAll()}, and can process it without holding any lock while producers already fill the
+ * next batch.<br/>
+ * A batch can be limited by number of elements and by estimated size in bytes. Elements exceeding a limit are
+ * rejected.
+ *
+ * @param <T> type of elements
+ */
+final class ConcurrentBatch<T>
+{
+    /**
+     * immutable node of the linked batch, newest element first
+     */
+    private static final class Node<T>
+    {
+        final T value;
+        final Node<T> next;
+        final int size;
+        final long bytes;
+
+        Node(final T value, final long bytes, final Node<T> next)
+        {
+            this.value = value;
+            this.next = next;
+            this.size = next == null ? 1 : next.size + 1;
+            this.bytes = next == null ? bytes : next.bytes + bytes;
+        }
+    }
+
+    private final AtomicReference<Node<T>> head = new AtomicReference<>();
+
+    /**
+     * @param value element to add
+     * @return size of batch including added element
+     */
+    int add(final T value)
+    {
+        return add(value, 0, Integer.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param value element to add
+     * @param bytes estimated size of element in bytes
+     * @param maxSize maximum number of elements in batch
+     * @param maxBytes maximum estimated size of batch in bytes
+     * @return size of batch including added element, or 0 if element is rejected because a limit is reached
+     */
+    int add(final T value, final long bytes, final int maxSize, final long maxBytes)
+    {
+        Node<T> current;
+        Node<T> node;
+        do
+        {
+            current = head.get();
+            if (current != null && (current.size >= maxSize || current.bytes + bytes > maxBytes))
+            {
+                return 0;
+            }
+            node = new Node<>(value, bytes, current);
+        } while (!head.compareAndSet(current, node));
+
+        return node.size;
+    }
+
+    /**
+     * @return current size of batch
+     */
+    int size()
+    {
+        Node<T> current = head.get();
+        return current == null ? 0 : current.size;
+    }
+
+    /**
+     * @return current estimated size of batch in bytes
+     */
+    long bytes()
+    {
+        Node<T> current = head.get();
+        return current == null ? 0 : current.bytes;
+    }
+
+    /**
+     * Takes all elements atomically and starts a new empty batch.
+     *
+     * @return all elements, newest element first
+     */
+    List<T> takeAll()
+    {
+        Node<T> node = head.getAndSet(null);
+        if (node == null)
+        {
+            return Collections.emptyList();
+        }
+
+        List<T> values = new ArrayList<>(node.size);
+        for (; node != null; node = node.next)
+        {
+            values.add(node.value);
+        }
+        return values;
+    }
+
+}
@@ -0,0 +1,202 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import org.tinylog.provider.InternalLogger;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batched output to stdout and stderr for {@link MaskedConsoleWriter}<br/>
+ * Text is encoded into one reusable buffer and written directly to the file descriptors of stdout and stderr through
+ * a {@link FileChannel}, bypassing {@link System#out} and {@link System#err}. The buffer is written if it is full, if
+ * the flush interval has passed, on {@link #flush()} or if the output switches between stdout and stderr, so the order
+ * of log entries across both streams is preserved.<br/>
+ * The flush interval is timed by the {@link SharedScheduler}, which is only used while the buffer contains text. Its
+ * resolution is {@value SharedScheduler#TICK_MILLIS} milliseconds.
+ */
+final class ConsoleChannelOutput
+{
+    /**
+     * default size of the buffer in bytes
+     */
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * default maximum time text stays in the buffer
+     */
+    static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofMillis(100);
+
+    private final WritableByteChannel out;
+    private final WritableByteChannel err;
+
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+
+    /**
+     * {@code true} if {@link #buffer} contains text for stderr
+     */
+    private boolean bufferedErr;
+
+    private final SharedScheduler scheduler = SharedScheduler.getInstance();
+    private final long flushIntervalMillis;
+
+    /**
+     * writes the buffer when the flush interval has passed, {@code null} while the buffer is empty
+     */
+    private SharedScheduler.Timeout flushTimeout;
+
+    private boolean closed;
+
+    /**
+     * @param charset charset for encoding text
+     * @param bufferSize size of the buffer in bytes
+     * @param flushInterval maximum time text stays in the buffer
+     */
+    ConsoleChannelOutput(final Charset charset, final int bufferSize, final Duration flushInterval)
+    {
+        this(charset, bufferSize, flushInterval, new FileOutputStream(FileDescriptor.out).getChannel(), new FileOutputStream(FileDescriptor.err).getChannel());
+    }
+
+    /**
+     * @param charset charset for encoding text
+     * @param bufferSize size of the buffer in bytes
+     * @param flushInterval maximum time text stays in the buffer
+     * @param out channel for stdout
+     * @param err channel for stderr
+     */
+    ConsoleChannelOutput(final Charset charset, final int bufferSize, final Duration flushInterval, final WritableByteChannel out, final WritableByteChannel err)
+    {
+        encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        buffer = ByteBuffer.allocate(Math.max(bufferSize, 1024));
+        flushIntervalMillis = Math.max(flushInterval.toMillis(), 1);
+        this.out = out;
+        this.err = err;
+
+        // periodic flushes may block on a stalled console
+        scheduler.reserveWorkers(1);
+    }
+
+    /**
+     * @param toErr {@code true} to write to stderr, {@code false} to write to stdout
+     * @param text text to write
+     */
+    synchronized void write(final boolean toErr, final CharSequence text)
+    {
+        try
+        {
+            if (toErr != bufferedErr)
+            {
+                // keep order across stdout and stderr
+                writeBuffer();
+                bufferedErr = toErr;
+            }
+
+            CharBuffer chars = CharBuffer.wrap(text);
+            encoder.reset();
+            CoderResult result;
+            do
+            {
+                result = encoder.encode(chars, buffer, true);
+                if (result.isOverflow())
+                {
+                    writeBuffer();
+                }
+            } while (result.isOverflow());
+
+            while (encoder.flush(buffer).isOverflow())
+            {
+                writeBuffer();
+            }
+
+            if (buffer.position() > 0 && flushTimeout == null && !closed)
+            {
+                flushTimeout = scheduler.schedule(this::flush, flushIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        catch (IOException e)
+        {
+            InternalLogger.log(Level.ERROR, e, "Failed to write to console");
+        }
+    }
+
+    /**
+     * Writes all buffered text.
+     */
+    synchronized void flush()
+    {
+        try
+        {
+            writeBuffer();
+        }
+        catch (IOException e)
+        {
+            InternalLogger.log(Level.ERROR, e, "Failed to write to console");
+        }
+    }
+
+    /**
+     * Writes all buffered text and stops periodical flushing. stdout and stderr stay open.
+     */
+    void close()
+    {
+        synchronized (this)
+        {
+            if (closed)
+            {
+                return;
+            }
+            closed = true;
+        }
+
+        flush();
+        scheduler.releaseWorkers(1);
+    }
+
+    /**
+     * Writes the buffer to stdout or stderr.
+     *
+     * @throws IOException Writing failed
+     */
+    private void writeBuffer() throws IOException
+    {
+        if (flushTimeout != null)
+        {
+            flushTimeout.cancel();
+            flushTimeout = null;
+        }
+
+        if (buffer.position() == 0)
+        {
+            return;
+        }
+
+        buffer.flip();
+        try
+        {
+            WritableByteChannel channel = bufferedErr ? err : out;
+            while (buffer.hasRemaining())
+            {
+                channel.write(buffer);
+            }
+        }
+        finally
+        {
+            buffer.clear();
+        }
+    }
+
+}
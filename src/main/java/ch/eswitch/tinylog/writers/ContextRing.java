@@ -0,0 +1,118 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.core.LogEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Preallocated ring of recent {@link LogEntry}, which are attached to the next mailed log entry as context<br/>
+ * Recording is lock-free: each log entry gets a sequence number and is stored together with it in its slot, older log
+ * entries are overwritten. A reader skips slots which are overwritten while it takes the tail.
+ */
+final class ContextRing
+{
+    /**
+     * log entry with its sequence number, replaced as a whole, so a reader never sees a sequence number with the log
+     * entry of another one
+     */
+    private static final class Slot
+    {
+        private final long sequence;
+        private final LogEntry logEntry;
+
+        private Slot(final long sequence, final LogEntry logEntry)
+        {
+            this.sequence = sequence;
+            this.logEntry = logEntry;
+        }
+    }
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<Slot> slots;
+
+    /**
+     * sequence number of next log entry
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * sequence number of first log entry not taken yet
+     */
+    private final AtomicLong taken = new AtomicLong();
+
+    /**
+     * @param capacity maximum number of log entries in the ring
+     */
+    ContextRing(final int capacity)
+    {
+        if (capacity <= 0)
+        {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity)
+        {
+            size <<= 1;
+        }
+
+        this.capacity = capacity;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * @param logEntry log entry to record, overwrites the oldest log entry if the ring is full
+     */
+    void record(final LogEntry logEntry)
+    {
+        long sequence = head.getAndIncrement();
+        int index = (int) sequence & mask;
+        Slot slot = new Slot(sequence, logEntry);
+
+        // a writer delayed by a full ring length must not overwrite the newer log entry
+        Slot current;
+        do
+        {
+            current = slots.get(index);
+            if (current != null && current.sequence > sequence)
+            {
+                return;
+            }
+        }
+        while (!slots.compareAndSet(index, current, slot));
+    }
+
+    /**
+     * Takes the recorded log entries, which have not been taken before.
+     *
+     * @return up to capacity log entries, oldest first
+     */
+    List<LogEntry> take()
+    {
+        long end = head.get();
+        long start = Math.max(end - capacity, taken.getAndAccumulate(end, Math::max));
+        if (start >= end)
+        {
+            return new ArrayList<>(0);
+        }
+
+        List<LogEntry> tail = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++)
+        {
+            Slot slot = slots.get((int) sequence & mask);
+
+            // skip slots overwritten by a newer log entry or not written yet
+            if (slot != null && slot.sequence == sequence)
+            {
+                tail.add(slot.logEntry);
+            }
+        }
+        return tail;
+    }
+
+}
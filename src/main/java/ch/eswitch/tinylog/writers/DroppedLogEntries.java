@@ -0,0 +1,93 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.core.LogEntry;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts {@link LogEntry} which are not buffered because a buffer limit or rate limit is reached<br/>
+ * Instead of the log entries only their number and the number of distinct messages are kept, so memory stays
+ * constant.
+ */
+final class DroppedLogEntries
+{
+    /**
+     * maximum number of distinct messages which are tracked
+     */
+    static final int MAX_DISTINCT = 1000;
+
+    private final AtomicLong count = new AtomicLong();
+
+    /**
+     * reason why log entries are dropped, e.g. "buffer limit reached"
+     */
+    private final String reason;
+
+    /**
+     * fingerprints of distinct messages (message and exception class)
+     */
+    private final Set<Integer> distinct = ConcurrentHashMap.newKeySet();
+
+    DroppedLogEntries()
+    {
+        this("buffer limit reached");
+    }
+
+    /**
+     * @param reason reason why log entries are dropped, e.g. "buffer limit reached"
+     */
+    DroppedLogEntries(final String reason)
+    {
+        this.reason = reason;
+    }
+
+    /**
+     * @param logEntry dropped log entry
+     */
+    void add(final LogEntry logEntry)
+    {
+        count.incrementAndGet();
+
+        if (distinct.size() < MAX_DISTINCT)
+        {
+            Throwable exception = logEntry.getException();
+            distinct.add(Objects.hash(logEntry.getMessage(), exception == null ? null : exception.getClass().getName()));
+        }
+    }
+
+    /**
+     * @return number of dropped log entries since last {@link #takeSummary()}
+     */
+    long count()
+    {
+        return count.get();
+    }
+
+    /**
+     * Creates a summary of all dropped log entries and resets the counters.
+     *
+     * @return summary, e.g. "+48,213 more entries, 12 distinct messages", or {@code null} if no log entries have been
+     *         dropped
+     */
+    String takeSummary()
+    {
+        long dropped = count.getAndSet(0);
+        if (dropped == 0)
+        {
+            return null;
+        }
+
+        int distinctMessages = distinct.size();
+        distinct.clear();
+
+        return String.format("+%,d more entries, %s%d distinct messages (not included, %s)",
+                             dropped,
+                             distinctMessages >= MAX_DISTINCT ? "at least " : "",
+                             distinctMessages,
+                             reason);
+    }
+
+}
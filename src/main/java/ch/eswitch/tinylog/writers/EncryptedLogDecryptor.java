@@ -0,0 +1,180 @@
+package ch.eswitch.tinylog.writers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.PrivateKey;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Command line tool to decrypt log files written by {@link MaskedRollingFileWriter} with
+ * {@link EncryptingFileConverter}<br/>
+ * Usage: <code>java -cp tinylog-simplemail-and-masked-writer.jar ch.eswitch.tinylog.writers.EncryptedLogDecryptor
+ * &lt;private key&gt; &lt;encrypted log file&gt; [&lt;output file&gt;]</code><br/>
+ * The private key must be a PKCS#8 encoded RSA private key (PEM or DER). If no output file is passed, the decrypted log
+ * is written to stdout.
+ */
+public final class EncryptedLogDecryptor
+{
+    private final PrivateKey privateKey;
+
+    /**
+     * @param privateKey RSA private key matching the public key configured for the writer
+     */
+    public EncryptedLogDecryptor(final PrivateKey privateKey)
+    {
+        this.privateKey = privateKey;
+    }
+
+    /**
+     * @param args private key file, encrypted log file and optional output file
+     * @throws Exception decryption failed
+     */
+    public static void main(final String[] args) throws Exception
+    {
+        if (args.length < 2 || args.length > 3)
+        {
+            System.err.println("usage: " + EncryptedLogDecryptor.class.getName() + " <private key> <encrypted log file> [<output file>]");
+            System.exit(2);
+        }
+
+        EncryptedLogDecryptor decryptor = new EncryptedLogDecryptor(loadPrivateKey(args[0]));
+
+        try (InputStream in = Files.newInputStream(Paths.get(args[1]));
+             OutputStream out = args.length == 3 ? Files.newOutputStream(Paths.get(args[2])) : System.out)
+        {
+            if (!decryptor.decrypt(in, out))
+            {
+                System.err.println("warning: log file is incomplete, last chunk is missing (writer not closed or file truncated)");
+            }
+        }
+    }
+
+    /**
+     * Loads a RSA private key.
+     *
+     * @param fileName file with PKCS#8 encoded private key (PEM or DER)
+     * @return loaded private key
+     * @throws IOException key file cannot be read
+     * @throws GeneralSecurityException key file does not contain a valid RSA private key
+     */
+    public static PrivateKey loadPrivateKey(final String fileName) throws IOException, GeneralSecurityException
+    {
+        return KeyFactory.getInstance("RSA").generatePrivate(new PKCS8EncodedKeySpec(EncryptingFileConverter.readKey(Paths.get(fileName))));
+    }
+
+    /**
+     * Decrypts an encrypted log file. A log file can consist of multiple parts, if an existing log file has been
+     * continued.
+     *
+     * @param encrypted encrypted log data
+     * @param decrypted stream for decrypted log data
+     * @return {@code true} if all parts are complete, {@code false} if the last chunk of a part is missing
+     * @throws IOException reading or writing failed
+     * @throws GeneralSecurityException log data is corrupt, manipulated or has been encrypted with another key
+     */
+    public boolean decrypt(final InputStream encrypted, final OutputStream decrypted) throws IOException, GeneralSecurityException
+    {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(encrypted));
+        OutputStream out = new BufferedOutputStream(decrypted);
+        Cipher cipher = Cipher.getInstance(EncryptingFileConverter.DATA_CIPHER);
+
+        boolean complete = true;
+        Key dataKey = null;
+        byte[] noncePrefix = null;
+        long chunkCounter = 0;
+        boolean partFinished = true;
+
+        int type;
+        while ((type = in.read()) >= 0)
+        {
+            if (type == EncryptingFileConverter.MAGIC[0])
+            {
+                // header of a new part
+                complete &= partFinished;
+
+                byte[] magic = new byte[EncryptingFileConverter.MAGIC.length];
+                magic[0] = (byte) type;
+                in.readFully(magic, 1, magic.length - 1);
+                if (!Arrays.equals(magic, EncryptingFileConverter.MAGIC))
+                {
+                    throw new IOException("invalid file header");
+                }
+
+                int version = in.readUnsignedByte();
+                if (version != EncryptingFileConverter.VERSION)
+                {
+                    throw new IOException("unsupported version " + version);
+                }
+
+                byte[] wrappedKey = new byte[in.readUnsignedShort()];
+                in.readFully(wrappedKey);
+                noncePrefix = new byte[EncryptingFileConverter.NONCE_PREFIX_LENGTH];
+                in.readFully(noncePrefix);
+
+                Cipher keyCipher = Cipher.getInstance(EncryptingFileConverter.KEY_CIPHER);
+                keyCipher.init(Cipher.UNWRAP_MODE, privateKey, EncryptingFileConverter.KEY_CIPHER_PARAMETERS);
+                dataKey = keyCipher.unwrap(wrappedKey, "AES", Cipher.SECRET_KEY);
+                chunkCounter = 0;
+                partFinished = false;
+            }
+            else if (type == EncryptingFileConverter.CHUNK || type == EncryptingFileConverter.LAST_CHUNK)
+            {
+                if (dataKey == null || partFinished)
+                {
+                    throw new IOException("chunk without file header");
+                }
+
+                byte[] cipherText;
+                try
+                {
+                    int length = in.readInt();
+                    if (length < EncryptingFileConverter.TAG_LENGTH)
+                    {
+                        throw new IOException("invalid chunk length " + length);
+                    }
+                    // read incrementally, a corrupt length must not allocate more than the file contains
+                    cipherText = in.readNBytes(length);
+                    if (cipherText.length < length)
+                    {
+                        throw new EOFException();
+                    }
+                }
+                catch (EOFException ex)
+                {
+                    // last chunk has not been written completely
+                    out.flush();
+                    return false;
+                }
+
+                cipher.init(Cipher.DECRYPT_MODE, dataKey, new GCMParameterSpec(EncryptingFileConverter.TAG_LENGTH * 8, EncryptingFileConverter.nonce(noncePrefix, chunkCounter)));
+                cipher.updateAAD(EncryptingFileConverter.additionalData((byte) type, chunkCounter));
+                out.write(cipher.doFinal(cipherText));
+
+                chunkCounter++;
+                partFinished = type == EncryptingFileConverter.LAST_CHUNK;
+            }
+            else
+            {
+                throw new IOException("invalid chunk type " + type);
+            }
+        }
+
+        out.flush();
+        return complete && partFinished;
+    }
+
+}
@@ -0,0 +1,504 @@
+package ch.eswitch.tinylog.writers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.spec.MGF1ParameterSpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.Base64;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
+
+import org.tinylog.Level;
+import org.tinylog.converters.FileConverter;
+import org.tinylog.provider.InternalLogger;
+
+/**
+ * {@link FileConverter} for {@link MaskedRollingFileWriter} which encrypts the log file while it is written<br/>
+ * Each log file (or each part appended to an existing log file) starts with a header containing a random AES-256 data
+ * key, which is wrapped with the configured RSA public key. The log data is encrypted with AES-GCM in authenticated
+ * chunks of {@value #PROPERTY_CHUNK_SIZE} bytes. Only the owner of the RSA private key can decrypt the log file
+ * with {@link EncryptedLogDecryptor}.<br/>
+ * Plain text is collected until a chunk is full and only then sealed, a shorter chunk is only written on flush and
+ * close. Each chunk is sealed into a reused buffer, so the throughput is close to writing plain text.<br/>
+ * <br/>
+ * File format (all numbers big endian):
+ * <pre>
+ * header: "TLGE" | version (1 byte) | length of wrapped key (2 bytes) | wrapped key | nonce prefix (4 bytes)
+ * chunk:  type (1 byte, 0 = chunk, 1 = last chunk) | length of cipher text (4 bytes) | cipher text incl. GCM tag
+ * </pre>
+ * The nonce of each chunk is the nonce prefix followed by the 8 bytes chunk counter. The chunk type and the chunk
+ * counter are authenticated as additional data, so reordered, removed or truncated chunks are detected.<br/>
+ * Before a log file is continued, a chunk torn by a crash is cut off at the end of the file, otherwise the header of
+ * the continued part would be read as part of the torn chunk.
+ */
+final class EncryptingFileConverter implements FileConverter
+{
+    /**
+     * value of writer property {@code convert} to enable encryption
+     */
+    static final String NAME = "encrypted";
+
+    /**
+     * Name of property in tinylog configuration file with the path to the RSA public key (X.509, PEM or DER encoded)
+     */
+    static final String PROPERTY_PUBLIC_KEY = "encryption.publickey";
+
+    /**
+     * Name of property in tinylog configuration file to define the maximum size of a plain text chunk in bytes
+     */
+    static final String PROPERTY_CHUNK_SIZE = "encryption.chunksize";
+
+    /**
+     * default maximum size of a plain text chunk in bytes
+     */
+    static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+
+    static final byte[] MAGIC = "TLGE".getBytes(StandardCharsets.US_ASCII);
+    static final byte VERSION = 1;
+    static final byte CHUNK = 0;
+    static final byte LAST_CHUNK = 1;
+
+    static final String DATA_CIPHER = "AES/GCM/NoPadding";
+    static final String KEY_CIPHER = "RSA/ECB/OAEPPadding";
+    static final OAEPParameterSpec KEY_CIPHER_PARAMETERS = new OAEPParameterSpec("SHA-256", "MGF1", MGF1ParameterSpec.SHA256, PSource.PSpecified.DEFAULT);
+    static final int NONCE_PREFIX_LENGTH = 4;
+    static final int TAG_LENGTH = 16;
+    static final int CHUNK_HEADER_LENGTH = 1 + 4;
+
+    /**
+     * Destination of encrypted data, e.g. the {@link org.tinylog.writers.raw.ByteArrayWriter} of the log file. The
+     * passed array is reused after the call.
+     *
+     * @param <E> exception thrown on write failures
+     */
+    interface Output<E extends Exception>
+    {
+        /**
+         * @param data encrypted data
+         * @param offset start of data
+         * @param length number of bytes
+         * @throws E writing failed
+         */
+        void write(byte[] data, int offset, int length) throws E;
+    }
+
+    /**
+     * Output into a byte array for the {@link FileConverter} API
+     */
+    private static final class ArrayOutput extends ByteArrayOutputStream implements Output<RuntimeException>
+    {
+    }
+
+    private final PublicKey publicKey;
+    private final SecureRandom random = new SecureRandom();
+    private final Cipher cipher;
+
+    /**
+     * buffer with plain text which is not yet encrypted
+     */
+    private final byte[] plain;
+    private int plainLength;
+
+    /**
+     * reused buffer for an encrypted chunk and a pending header
+     */
+    private byte[] sealed;
+
+    /**
+     * nonce of the current chunk: nonce prefix of the file and chunk counter
+     */
+    private final ByteBuffer nonce = ByteBuffer.allocate(NONCE_PREFIX_LENGTH + 8);
+    private final ByteBuffer additionalData = ByteBuffer.allocate(1 + 8);
+
+    private SecretKey dataKey;
+    private long chunkCounter;
+
+    /**
+     * header of the current file, which is not yet returned by {@link #write(byte[])}
+     */
+    private byte[] pendingHeader;
+
+    /**
+     * @param publicKey RSA public key to wrap the data keys
+     * @param chunkSize maximum size of a plain text chunk in bytes
+     * @throws GeneralSecurityException AES-GCM is not supported
+     */
+    EncryptingFileConverter(final PublicKey publicKey, final int chunkSize) throws GeneralSecurityException
+    {
+        this.publicKey = publicKey;
+        this.cipher = Cipher.getInstance(DATA_CIPHER);
+        this.plain = new byte[Math.max(chunkSize, 1024)];
+        this.sealed = new byte[CHUNK_HEADER_LENGTH + plain.length + TAG_LENGTH];
+    }
+
+    @Override
+    public String getBackupSuffix()
+    {
+        return null;
+    }
+
+    @Override
+    public void open(final String fileName)
+    {
+        plainLength = 0;
+        chunkCounter = 0;
+        try
+        {
+            truncateIncomplete(Paths.get(fileName));
+        }
+        catch (IOException ex)
+        {
+            InternalLogger.log(Level.ERROR, ex, "Failed to check '" + fileName + "' for incomplete chunks");
+        }
+
+        try
+        {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(256, random);
+            dataKey = keyGenerator.generateKey();
+
+            byte[] noncePrefix = new byte[NONCE_PREFIX_LENGTH];
+            random.nextBytes(noncePrefix);
+            System.arraycopy(noncePrefix, 0, nonce.array(), 0, NONCE_PREFIX_LENGTH);
+
+            Cipher keyCipher = Cipher.getInstance(KEY_CIPHER);
+            keyCipher.init(Cipher.WRAP_MODE, publicKey, KEY_CIPHER_PARAMETERS);
+            byte[] wrappedKey = keyCipher.wrap(dataKey);
+
+            ByteBuffer header = ByteBuffer.allocate(MAGIC.length + 1 + 2 + wrappedKey.length + NONCE_PREFIX_LENGTH);
+            header.put(MAGIC).put(VERSION).putShort((short) wrappedKey.length).put(wrappedKey).put(noncePrefix);
+            pendingHeader = header.array();
+            if (sealed.length < pendingHeader.length + CHUNK_HEADER_LENGTH + plain.length + TAG_LENGTH)
+            {
+                sealed = new byte[pendingHeader.length + CHUNK_HEADER_LENGTH + plain.length + TAG_LENGTH];
+            }
+        }
+        catch (GeneralSecurityException ex)
+        {
+            dataKey = null;
+            pendingHeader = null;
+            InternalLogger.log(Level.ERROR, ex, "Failed to initialize encryption for '" + fileName + "'");
+        }
+    }
+
+    @Override
+    public byte[] write(final byte[] data)
+    {
+        ArrayOutput output = new ArrayOutput();
+        write(data, output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Appends plain text to the current chunk. Only full chunks are encrypted and passed to the output, each together
+     * with a pending header.
+     *
+     * @param data plain text
+     * @param output destination of encrypted data
+     * @param <E> exception thrown by the output
+     * @throws E writing to output failed
+     */
+    <E extends Exception> void write(final byte[] data, final Output<E> output) throws E
+    {
+        if (dataKey == null)
+        {
+            // never write plain text, if encryption is not available
+            return;
+        }
+
+        int offset = 0;
+        while (data.length - offset >= plain.length - plainLength)
+        {
+            int length = plain.length - plainLength;
+            System.arraycopy(data, offset, plain, plainLength, length);
+            plainLength += length;
+            offset += length;
+            seal(CHUNK, output);
+        }
+
+        System.arraycopy(data, offset, plain, plainLength, data.length - offset);
+        plainLength += data.length - offset;
+    }
+
+    /**
+     * Encrypts all buffered plain text as one chunk.
+     *
+     * @return Encrypted data, never {@code null}
+     */
+    byte[] flush()
+    {
+        ArrayOutput output = new ArrayOutput();
+        flush(output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Encrypts all buffered plain text as one chunk and passes it to the output.
+     *
+     * @param output destination of encrypted data
+     * @param <E> exception thrown by the output
+     * @throws E writing to output failed
+     */
+    <E extends Exception> void flush(final Output<E> output) throws E
+    {
+        if (dataKey == null || (plainLength == 0 && pendingHeader == null))
+        {
+            return;
+        }
+
+        seal(CHUNK, output);
+    }
+
+    /**
+     * Encrypts all buffered plain text as last chunk of the current log file.
+     *
+     * @return Encrypted data, never {@code null}
+     */
+    byte[] finish()
+    {
+        ArrayOutput output = new ArrayOutput();
+        finish(output);
+        return output.toByteArray();
+    }
+
+    /**
+     * Encrypts all buffered plain text as last chunk of the current log file and passes it to the output, which must
+     * be written to the log file before it is closed.
+     *
+     * @param output destination of encrypted data
+     * @param <E> exception thrown by the output
+     * @throws E writing to output failed
+     */
+    <E extends Exception> void finish(final Output<E> output) throws E
+    {
+        if (dataKey == null)
+        {
+            return;
+        }
+
+        seal(LAST_CHUNK, output);
+        dataKey = null;
+    }
+
+    @Override
+    public void close()
+    {
+        dataKey = null;
+        pendingHeader = null;
+        plainLength = 0;
+    }
+
+    @Override
+    public void shutdown()
+    {
+    }
+
+    /**
+     * Encrypts {@link #plain} (which can be empty) as one chunk into {@link #sealed}, including a pending header, and
+     * passes it to the output.
+     *
+     * @param type chunk type
+     * @param output destination of encrypted data
+     * @param <E> exception thrown by the output
+     * @throws E writing to output failed
+     */
+    private <E extends Exception> void seal(final byte type, final Output<E> output) throws E
+    {
+        int position = 0;
+        if (pendingHeader != null)
+        {
+            System.arraycopy(pendingHeader, 0, sealed, 0, pendingHeader.length);
+            position = pendingHeader.length;
+            pendingHeader = null;
+        }
+
+        try
+        {
+            nonce.putLong(NONCE_PREFIX_LENGTH, chunkCounter);
+            additionalData.put(0, type).putLong(1, chunkCounter);
+            cipher.init(Cipher.ENCRYPT_MODE, dataKey, new GCMParameterSpec(TAG_LENGTH * 8, nonce.array()));
+            cipher.updateAAD(additionalData.array());
+
+            sealed[position] = type;
+            ByteBuffer.wrap(sealed).putInt(position + 1, plainLength + TAG_LENGTH);
+            position += CHUNK_HEADER_LENGTH;
+            position += cipher.doFinal(plain, 0, plainLength, sealed, position);
+        }
+        catch (GeneralSecurityException ex)
+        {
+            InternalLogger.log(Level.ERROR, ex, "Failed to encrypt log data");
+            throw new IllegalStateException(ex);
+        }
+        finally
+        {
+            chunkCounter++;
+            plainLength = 0;
+        }
+
+        output.write(sealed, 0, position);
+    }
+
+    /**
+     * Cuts off an incomplete header or chunk at the end of an existing log file. Only the structure is checked, chunks
+     * can't be authenticated without the private key.
+     *
+     * @param file log file, which may not exist
+     * @throws IOException log file cannot be read or truncated
+     */
+    static void truncateIncomplete(final Path file) throws IOException
+    {
+        if (!Files.isRegularFile(file))
+        {
+            return;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE))
+        {
+            long size = channel.size();
+            long position = 0;
+            while (position < size)
+            {
+                long next = skip(channel, position);
+                if (next < 0 || next > size)
+                {
+                    InternalLogger.log(Level.WARN, "Incomplete chunk at position " + position + " of '" + file + "' is cut off");
+                    channel.truncate(position);
+                    break;
+                }
+                position = next;
+            }
+        }
+    }
+
+    /**
+     * @param channel log file
+     * @param position position of a header or chunk
+     * @return position after the header or chunk, or -1 if it's incomplete or invalid
+     * @throws IOException log file cannot be read
+     */
+    private static long skip(final FileChannel channel, final long position) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate(MAGIC.length + 1 + 2);
+        buffer.limit(1);
+        if (!readFully(channel, buffer, position))
+        {
+            return -1;
+        }
+
+        byte type = buffer.get(0);
+        if (type == MAGIC[0])
+        {
+            buffer.limit(buffer.capacity());
+            if (!readFully(channel, buffer, position) || !Arrays.equals(Arrays.copyOf(buffer.array(), MAGIC.length), MAGIC))
+            {
+                return -1;
+            }
+            return position + buffer.capacity() + (buffer.getShort(MAGIC.length + 1) & 0xFFFF) + NONCE_PREFIX_LENGTH;
+        }
+        if (type == CHUNK || type == LAST_CHUNK)
+        {
+            buffer.limit(CHUNK_HEADER_LENGTH);
+            if (!readFully(channel, buffer, position))
+            {
+                return -1;
+            }
+            int length = buffer.getInt(1);
+            return length < TAG_LENGTH ? -1 : position + CHUNK_HEADER_LENGTH + length;
+        }
+        return -1;
+    }
+
+    /**
+     * @return {@code false} if the end of file is reached before the buffer is full
+     */
+    private static boolean readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException
+    {
+        buffer.position(0);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param noncePrefix random nonce prefix of the file
+     * @param chunkCounter number of chunk
+     * @return GCM nonce for the passed chunk
+     */
+    static byte[] nonce(final byte[] noncePrefix, final long chunkCounter)
+    {
+        return ByteBuffer.allocate(NONCE_PREFIX_LENGTH + 8).put(noncePrefix).putLong(chunkCounter).array();
+    }
+
+    /**
+     * @param type chunk type
+     * @param chunkCounter number of chunk
+     * @return authenticated additional data for the passed chunk
+     */
+    static byte[] additionalData(final byte type, final long chunkCounter)
+    {
+        return ByteBuffer.allocate(1 + 8).put(type).putLong(chunkCounter).array();
+    }
+
+    /**
+     * Loads a RSA public key.
+     *
+     * @param fileName file with X.509 encoded public key (PEM or DER)
+     * @return loaded public key
+     * @throws IOException key file cannot be read
+     * @throws GeneralSecurityException key file does not contain a valid RSA public key
+     */
+    static PublicKey loadPublicKey(final String fileName) throws IOException, GeneralSecurityException
+    {
+        return KeyFactory.getInstance("RSA").generatePublic(new X509EncodedKeySpec(readKey(Paths.get(fileName))));
+    }
+
+    /**
+     * Reads a PEM or DER encoded key file.
+     *
+     * @param path key file
+     * @return DER encoded key
+     * @throws IOException key file cannot be read
+     */
+    static byte[] readKey(final Path path) throws IOException
+    {
+        byte[] content = Files.readAllBytes(path);
+        String text = new String(content, StandardCharsets.US_ASCII);
+        if (!text.contains("-----BEGIN"))
+        {
+            return content;
+        }
+
+        StringBuilder base64 = new StringBuilder();
+        for (String line : text.split("\\R"))
+        {
+            if (!line.startsWith("-----"))
+            {
+                base64.append(line.trim());
+            }
+        }
+        return Base64.getDecoder().decode(base64.toString());
+    }
+
+}
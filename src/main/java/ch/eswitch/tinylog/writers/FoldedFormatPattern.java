@@ -0,0 +1,167 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.configuration.ServiceLoader;
+import org.tinylog.core.LogEntry;
+import org.tinylog.pattern.FormatPatternParser;
+import org.tinylog.pattern.Token;
+import org.tinylog.throwable.ThrowableData;
+import org.tinylog.throwable.ThrowableFilter;
+import org.tinylog.throwable.ThrowableWrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Format pattern of {@link SimpleMailWriter} with folded stack traces<br/>
+ * The format pattern is split at its top-level exception tokens: {@code {exception}} and {@code {message}}, which
+ * renders message and exception. The parts in between are rendered by tinylog. The exception is filtered by the
+ * throwable filters of property {@code exception}, like by tinylog, and rendered by {@link StackTraceFolder} at the
+ * position of its token. Exception tokens nested in style options (e.g. {@code {{message}|indent=4}}) are rendered by
+ * tinylog without folding.
+ */
+final class FoldedFormatPattern
+{
+    /**
+     * default format pattern of tinylog's {@link org.tinylog.writers.AbstractFormatPatternWriter}
+     */
+    static final String DEFAULT_FORMAT = "{date} [{thread}] {class}.{method}()\n{level}: {message}";
+
+    private static final String EXCEPTION = "{exception}";
+    private static final String MESSAGE = "{message}";
+
+    /**
+     * part of the format pattern
+     */
+    private static final class Part
+    {
+        /**
+         * rendered by tinylog, or {@code null}
+         */
+        final Token token;
+
+        /**
+         * {@code true} if the exception is rendered after {@link #token}
+         */
+        final boolean exception;
+
+        Part(final Token token, final boolean exception)
+        {
+            this.token = token;
+            this.exception = exception;
+        }
+    }
+
+    private final List<Part> parts;
+    private final List<ThrowableFilter> filters;
+    private final StackTraceFolder folder;
+
+    private FoldedFormatPattern(final List<Part> parts, final List<ThrowableFilter> filters, final StackTraceFolder folder)
+    {
+        this.parts = parts;
+        this.filters = filters;
+        this.folder = folder;
+    }
+
+    /**
+     * @param format format pattern of the writer, {@code null} for tinylog's default
+     * @param exceptionFilters throwable filters of property {@code exception}, or {@code null}
+     * @param folder renders the stack traces
+     * @return format pattern with folded stack traces, or {@code null} if format pattern doesn't render exceptions
+     */
+    static FoldedFormatPattern parse(final String format, final String exceptionFilters, final StackTraceFolder folder)
+    {
+        // like tinylog, each log entry is terminated by a line separator
+        String pattern = (format == null ? DEFAULT_FORMAT : format) + System.lineSeparator();
+        FormatPatternParser parser = new FormatPatternParser(exceptionFilters);
+
+        List<Part> parts = new ArrayList<>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < pattern.length(); i++)
+        {
+            char c = pattern.charAt(i);
+            if (c == '{')
+            {
+                if (depth == 0 && (pattern.startsWith(EXCEPTION, i) || pattern.startsWith(MESSAGE, i)))
+                {
+                    addPart(parts, parser, pattern.substring(start, i), false);
+                    if (pattern.startsWith(EXCEPTION, i))
+                    {
+                        parts.add(new Part(null, true));
+                        i += EXCEPTION.length() - 1;
+                    }
+                    else
+                    {
+                        parts.add(new Part(parser.parse("{message-only}"), true));
+                        i += MESSAGE.length() - 1;
+                    }
+                    start = i + 1;
+                    continue;
+                }
+                depth++;
+            }
+            else if (c == '}' && depth > 0)
+            {
+                depth--;
+            }
+        }
+        if (start == 0)
+        {
+            return null;
+        }
+        addPart(parts, parser, pattern.substring(start), false);
+
+        List<ThrowableFilter> filters = exceptionFilters == null ? Collections.emptyList() : new ServiceLoader<>(ThrowableFilter.class, String.class).createList(
+                exceptionFilters);
+        return new FoldedFormatPattern(parts, filters, folder);
+    }
+
+    private static void addPart(final List<Part> parts, final FormatPatternParser parser, final String pattern, final boolean exception)
+    {
+        if (pattern.length() > 0)
+        {
+            parts.add(new Part(parser.parse(pattern), exception));
+        }
+    }
+
+    /**
+     * @param logEntry LogEntry to render
+     * @param renderedStacks stack traces already rendered in current mail, or {@code null} to disable
+     *            back-references
+     * @return rendered logEntry with folded stack trace at the position of its token
+     */
+    String render(final LogEntry logEntry, final Map<StackTraceFolder.Fingerprint, Integer> renderedStacks)
+    {
+        StringBuilder builder = new StringBuilder();
+        for (Part part : parts)
+        {
+            if (part.token != null)
+            {
+                part.token.render(logEntry, builder);
+            }
+            if (part.exception && logEntry.getException() != null)
+            {
+                if (part.token != null && logEntry.getMessage() != null)
+                {
+                    // same separator as tinylog's {message}
+                    builder.append(": ");
+                }
+                folder.append(builder, filter(logEntry.getException()), renderedStacks);
+            }
+        }
+        return builder.toString();
+    }
+
+    private ThrowableData filter(final Throwable throwable)
+    {
+        ThrowableData data = new ThrowableWrapper(throwable);
+        for (ThrowableFilter filter : filters)
+        {
+            data = filter.filter(data);
+        }
+        return data;
+    }
+
+}
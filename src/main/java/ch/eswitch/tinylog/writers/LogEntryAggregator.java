@@ -0,0 +1,189 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.core.LogEntry;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Aggregates duplicate {@link LogEntry} within one send interval<br/>
+ * Log entries with the same fingerprint (level, message, exception class and exception message) are counted, only the
+ * first log entry and its context are kept for rendering. The number of distinct fingerprints per interval is limited.
+ */
+final class LogEntryAggregator
+{
+    /**
+     * all log entries with the same fingerprint
+     */
+    static final class Aggregate
+    {
+        final LogEntry logEntry;
+
+        /**
+         * recent log entries recorded before the first log entry, oldest first, or {@code null}
+         */
+        final List<LogEntry> precontext;
+        private final LongAdder count = new LongAdder();
+        private final LongAccumulator first = new LongAccumulator(Long::min, Long.MAX_VALUE);
+        private final LongAccumulator last = new LongAccumulator(Long::max, Long.MIN_VALUE);
+
+        Aggregate(final LogEntry logEntry, final List<LogEntry> precontext)
+        {
+            this.logEntry = logEntry;
+            this.precontext = precontext;
+        }
+
+        private void add(final long timestamp)
+        {
+            count.increment();
+            first.accumulate(timestamp);
+            last.accumulate(timestamp);
+        }
+
+        /**
+         * @return number of log entries
+         */
+        long getCount()
+        {
+            return count.sum();
+        }
+
+        /**
+         * @return timestamp of first log entry
+         */
+        Instant getFirst()
+        {
+            return Instant.ofEpochMilli(first.get());
+        }
+
+        /**
+         * @return timestamp of last log entry
+         */
+        Instant getLast()
+        {
+            return Instant.ofEpochMilli(last.get());
+        }
+    }
+
+    private final int maxSize;
+
+    /**
+     * shared lock for adding log entries, exclusive lock for taking all aggregates, so no count gets lost
+     */
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private volatile ConcurrentHashMap<String, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+    /**
+     * @param maxSize maximum number of distinct fingerprints
+     */
+    LogEntryAggregator(final int maxSize)
+    {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param logEntry log entry to add
+     * @return number of distinct fingerprints, or 0 if the log entry is rejected because the maximum number of
+     *         distinct fingerprints is reached
+     */
+    int add(final LogEntry logEntry)
+    {
+        return add(logEntry, null);
+    }
+
+    /**
+     * @param logEntry log entry to add
+     * @param precontext recent log entries recorded before the log entry, oldest first, or {@code null}; only kept if
+     *            the log entry is the first with its fingerprint
+     * @return number of distinct fingerprints, or 0 if the log entry is rejected because the maximum number of
+     *         distinct fingerprints is reached
+     */
+    int add(final LogEntry logEntry, final List<LogEntry> precontext)
+    {
+        String fingerprint = fingerprint(logEntry);
+        long timestamp = logEntry.getTimestamp() == null ? System.currentTimeMillis() : logEntry.getTimestamp().toDate().getTime();
+
+        lock.readLock().lock();
+        try
+        {
+            Aggregate aggregate = aggregates.get(fingerprint);
+            if (aggregate == null)
+            {
+                if (aggregates.size() >= maxSize)
+                {
+                    return 0;
+                }
+                aggregate = aggregates.computeIfAbsent(fingerprint, key -> new Aggregate(logEntry, precontext));
+            }
+            aggregate.add(timestamp);
+            return aggregates.size();
+        }
+        finally
+        {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return number of distinct fingerprints
+     */
+    int size()
+    {
+        return aggregates.size();
+    }
+
+    /**
+     * Takes all aggregates and starts a new interval.
+     *
+     * @return all aggregates, most recent first
+     */
+    List<Aggregate> takeAll()
+    {
+        ConcurrentHashMap<String, Aggregate> taken;
+        lock.writeLock().lock();
+        try
+        {
+            if (aggregates.isEmpty())
+            {
+                return new ArrayList<>();
+            }
+            taken = aggregates;
+            aggregates = new ConcurrentHashMap<>();
+        }
+        finally
+        {
+            lock.writeLock().unlock();
+        }
+
+        List<Aggregate> list = new ArrayList<>(taken.values());
+        list.sort(Comparator.comparing(Aggregate::getLast).reversed());
+        return list;
+    }
+
+    /**
+     * @param logEntry log entry
+     * @return fingerprint of level, message, exception class and exception message
+     */
+    private static String fingerprint(final LogEntry logEntry)
+    {
+        StringBuilder fingerprint = new StringBuilder();
+        fingerprint.append(logEntry.getLevel()).append('|').append(logEntry.getMessage());
+
+        Throwable exception = logEntry.getException();
+        if (exception != null)
+        {
+            fingerprint.append('|').append(exception.getClass().getName()).append('|').append(exception.getMessage());
+        }
+
+        return fingerprint.toString();
+    }
+
+}
@@ -0,0 +1,208 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import org.tinylog.provider.InternalLogger;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Body of a mail of {@link SimpleMailWriter}, which is rendered chunk by chunk<br/>
+ * The body is kept in memory up to a threshold. When the threshold is exceeded, the body is streamed into a gzip
+ * compressed temporary file, which is sent as attachment, so memory is bounded by the threshold and the buffer size
+ * instead of the size of the body.
+ */
+final class MailBody
+{
+    /**
+     * size of buffer for compressed output
+     */
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * maximum length of body in memory, 0 to keep body in memory always
+     */
+    private long threshold;
+
+    private StringBuilder text = new StringBuilder();
+    private Path attachment;
+    private OutputStream out;
+    private long length;
+    private boolean incomplete;
+
+    /**
+     * @param threshold maximum length of body in memory, 0 to keep body in memory always
+     */
+    MailBody(final long threshold)
+    {
+        this.threshold = threshold;
+    }
+
+    /**
+     * @param s text to append
+     * @return this body
+     */
+    MailBody append(final String s)
+    {
+        length += s.length();
+        if (out == null)
+        {
+            text.append(s);
+            spillIfExceeded();
+        }
+        else
+        {
+            write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return this;
+    }
+
+    /**
+     * @param utf8 UTF-8 encoded text to append
+     * @return this body
+     */
+    MailBody append(final byte[] utf8)
+    {
+        if (out == null)
+        {
+            return append(new String(utf8, StandardCharsets.UTF_8));
+        }
+
+        length += utf8.length;
+        write(utf8);
+        return this;
+    }
+
+    /**
+     * @return {@code true} if the body is written to {@link #getAttachment()}
+     */
+    boolean isAttachment()
+    {
+        return attachment != null;
+    }
+
+    /**
+     * @return body, only if it's kept in memory
+     */
+    String getText()
+    {
+        return text.toString();
+    }
+
+    /**
+     * @return gzip compressed temporary file with the body, {@code null} if the body is kept in memory
+     */
+    Path getAttachment()
+    {
+        return attachment;
+    }
+
+    /**
+     * @return approximate length of body in characters
+     */
+    long getLength()
+    {
+        return length;
+    }
+
+    /**
+     * @return {@code true} if the attachment couldn't be written completely
+     */
+    boolean isIncomplete()
+    {
+        return incomplete;
+    }
+
+    /**
+     * Finishes the compressed attachment, if any.
+     */
+    void finish()
+    {
+        if (out != null)
+        {
+            try
+            {
+                out.close();
+            }
+            catch (IOException e)
+            {
+                incomplete = true;
+                InternalLogger.log(Level.ERROR, e, "Failed to write mail attachment " + attachment);
+            }
+            out = null;
+        }
+    }
+
+    /**
+     * move body from memory into compressed attachment, if threshold is exceeded
+     */
+    private void spillIfExceeded()
+    {
+        if (threshold <= 0 || text.length() <= threshold)
+        {
+            return;
+        }
+
+        try
+        {
+            attachment = Files.createTempFile("tinylog-mail-", ".txt.gz");
+            out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(attachment), BUFFER_SIZE), BUFFER_SIZE);
+        }
+        catch (IOException e)
+        {
+            // keep body in memory
+            InternalLogger.log(Level.ERROR, e, "Failed to create mail attachment");
+            threshold = 0;
+            if (attachment != null)
+            {
+                delete(attachment);
+                attachment = null;
+            }
+            out = null;
+            return;
+        }
+
+        String s = text.toString();
+        text = new StringBuilder();
+        write(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void write(final byte[] bytes)
+    {
+        if (incomplete)
+        {
+            return;
+        }
+
+        try
+        {
+            out.write(bytes);
+        }
+        catch (IOException e)
+        {
+            incomplete = true;
+            InternalLogger.log(Level.ERROR, e, "Failed to write mail attachment " + attachment);
+        }
+    }
+
+    /**
+     * @param file temporary attachment to delete
+     */
+    static void delete(final Path file)
+    {
+        try
+        {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e)
+        {
+            InternalLogger.log(Level.WARN, e, "Failed to delete mail attachment " + file);
+        }
+    }
+
+}
@@ -0,0 +1,179 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Rate limits of {@link SimpleMailWriter}<br/>
+ * Mails are limited by a token bucket per writer, log entries by a token bucket per level. Log entries exceeding their
+ * limit are suppressed and only counted. Mails exceeding their limit are deferred, and while mails are sent at a high
+ * rate the effective send interval is stretched, so more log entries are combined into one mail. The interval shrinks
+ * back to the configured send interval when the load decreases.
+ */
+final class MailRateLimiter
+{
+    /**
+     * minimum effective send interval after it has been stretched
+     */
+    static final Duration MIN_STRETCHED_INTERVAL = Duration.ofMinutes(1);
+
+    /**
+     * limit of mails, {@code null} if not limited
+     */
+    private final TokenBucket mails;
+
+    /**
+     * limit of log entries by level ordinal, {@code null} if a level is not limited
+     */
+    private final TokenBucket[] levels;
+
+    /**
+     * configured send interval, {@code null} if mails are sent immediately
+     */
+    private final Duration sendInterval;
+
+    /**
+     * maximum effective send interval
+     */
+    private final Duration maxInterval;
+
+    /**
+     * effective send interval, {@code null} if mails are sent immediately
+     */
+    private volatile Duration interval;
+
+    private final AtomicLong deferredMails = new AtomicLong();
+    private final AtomicLongArray suppressed = new AtomicLongArray(Level.values().length);
+
+    /**
+     * @param mails limit of mails, {@code null} if not limited
+     * @param levels limit of log entries by level ordinal, elements are {@code null} if a level is not limited
+     * @param sendInterval configured send interval, {@code null} if mails are sent immediately
+     * @param maxInterval maximum effective send interval
+     */
+    MailRateLimiter(final TokenBucket mails, final TokenBucket[] levels, final Duration sendInterval, final Duration maxInterval)
+    {
+        this.mails = mails;
+        this.levels = levels;
+        this.sendInterval = sendInterval;
+        this.maxInterval = maxInterval;
+        this.interval = sendInterval;
+    }
+
+    /**
+     * @param level level of log entry
+     * @param now current time from {@link System#nanoTime()}
+     * @return {@code true} if log entry is accepted, {@code false} if it's suppressed
+     */
+    boolean tryAcquireEntry(final Level level, final long now)
+    {
+        TokenBucket bucket = levels[level.ordinal()];
+        if (bucket == null || bucket.tryConsume(now))
+        {
+            return true;
+        }
+
+        suppressed.incrementAndGet(level.ordinal());
+        return false;
+    }
+
+    /**
+     * @param now current time from {@link System#nanoTime()}
+     * @return 0 if a mail can be sent, otherwise nanoseconds until the next mail can be sent
+     */
+    long tryAcquireMail(final long now)
+    {
+        if (mails == null || mails.tryConsume(now))
+        {
+            return 0;
+        }
+        return Math.max(mails.nanosUntilToken(now), 1);
+    }
+
+    /**
+     * Counts a mail, which is deferred because of the mail limit.
+     */
+    void onDeferred()
+    {
+        deferredMails.incrementAndGet();
+    }
+
+    /**
+     * Adapts the effective send interval after a mail has been submitted: stretch it while more than half of the mail
+     * limit is used, shrink it while less than a quarter is used.
+     *
+     * @param now current time from {@link System#nanoTime()}
+     */
+    void onSent(final long now)
+    {
+        if (mails == null)
+        {
+            return;
+        }
+
+        double used = mails.getUsed(now);
+        Duration current = interval;
+        if (used > mails.getCapacity() / 2.0)
+        {
+            Duration stretched = current == null || current.compareTo(MIN_STRETCHED_INTERVAL) < 0 ? MIN_STRETCHED_INTERVAL : current.multipliedBy(2);
+            interval = stretched.compareTo(maxInterval) > 0 ? maxInterval : stretched;
+        }
+        else if (used < mails.getCapacity() / 4.0 && current != null && !current.equals(sendInterval))
+        {
+            Duration shrunk = current.dividedBy(2);
+            interval = shrunk.compareTo(MIN_STRETCHED_INTERVAL) < 0 || (sendInterval != null && shrunk.compareTo(sendInterval) < 0) ? sendInterval : shrunk;
+        }
+    }
+
+    /**
+     * @return effective send interval, {@code null} if mails are sent immediately
+     */
+    Duration getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     * @return mails sent within the period of the mail limit, 0 if mails are not limited
+     */
+    double getMailRate()
+    {
+        return mails == null ? 0 : mails.getUsed(System.nanoTime());
+    }
+
+    /**
+     * @return number of mails, which have been deferred because of the mail limit
+     */
+    long getDeferredMails()
+    {
+        return deferredMails.get();
+    }
+
+    /**
+     * @param level level
+     * @return number of suppressed log entries of level
+     */
+    long getSuppressed(final Level level)
+    {
+        return suppressed.get(level.ordinal());
+    }
+
+    /**
+     * @return {@code true} if log entries are limited by level
+     */
+    boolean limitsLevels()
+    {
+        for (TokenBucket bucket : levels)
+        {
+            if (bucket != null)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,271 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Route of {@link SimpleMailWriter}<br/>
+ * A route selects {@link LogEntry} by level, tag and class name, and has its own recipients, subject and batch of log
+ * entries for the next mail. All routes of a writer share the mailer, connection pool, filter and threads.
+ */
+final class MailRoute
+{
+    /**
+     * body of a mail which could not be sent, with its {@link #spool} segments and compressed attachments
+     */
+    static final class FailedMail
+    {
+        final String text;
+        final List<Path> segments;
+        final List<Path> attachments;
+
+        FailedMail(final String text, final List<Path> segments, final List<Path> attachments)
+        {
+            this.text = text;
+            this.segments = segments;
+            this.attachments = attachments;
+        }
+    }
+
+    /**
+     * {@link LogEntry} with recent log entries of lower level, which are rendered after it as context
+     */
+    static final class ContextEntry
+    {
+        final LogEntry logEntry;
+        final List<LogEntry> precontext;
+
+        ContextEntry(final LogEntry logEntry, final List<LogEntry> precontext)
+        {
+            this.logEntry = logEntry;
+            this.precontext = precontext;
+        }
+    }
+
+    /**
+     * name of route, {@code null} for the default route
+     */
+    final String name;
+
+    /**
+     * minimum level, {@code null} for all levels
+     */
+    private final Level level;
+
+    /**
+     * tags, {@code null} for all tags
+     */
+    private final Set<String> tags;
+
+    /**
+     * class name prefixes, {@code null} for all classes
+     */
+    private final List<String> classPrefixes;
+
+    /**
+     * recipients separated by comma or semicolon, {@code null} for default recipients of Simple Java Mail
+     */
+    final String recipients;
+
+    /**
+     * subject, {@code null} for default subject of Simple Java Mail
+     */
+    final String subject;
+
+    /**
+     * buffered log entries which should be sent in next mail, in order of writing: {@link LogEntry},
+     * {@link ContextEntry} or rendered log entry as UTF-8 bytes<br/>
+     * producers add log entries without locking, the next mail takes all of them atomically
+     */
+    final ConcurrentBatch<Object> bufferedLogEntries = new ConcurrentBatch<>();
+
+    /**
+     * buffered log entries which are not yet written to {@link #spool}, newest first<br/>
+     * queued by the logging threads, whichever gets the spool lock first renders and writes all of them in one record
+     */
+    final ConcurrentBatch<Object> unspooled = new ConcurrentBatch<>();
+
+    /**
+     * aggregated {@link LogEntry} which should be sent in next mail, {@code null} if aggregation is disabled
+     */
+    final LogEntryAggregator aggregator;
+
+    /**
+     * {@link LogEntry} which are not buffered, because a buffer limit is reached
+     */
+    final DroppedLogEntries droppedLogEntries = new DroppedLogEntries();
+
+    /**
+     * {@link LogEntry} which are not buffered, because the rate limit of their level is reached
+     */
+    final DroppedLogEntries suppressedLogEntries = new DroppedLogEntries("rate limit reached");
+
+    /**
+     * bodies of mails which could not be sent, they are sent again with the next mail
+     */
+    final ConcurrentBatch<FailedMail> failedMails = new ConcurrentBatch<>();
+
+    /**
+     * number of failed mails which are discarded, because {@link #failedMails} is full
+     */
+    final AtomicLong discardedMails = new AtomicLong();
+
+    /**
+     * records accepted {@link LogEntry}, {@code null} if no spool is used
+     */
+    MailSpool spool;
+
+    /**
+     * lock to rotate {@link #spool} and take all buffered {@link LogEntry} atomically, so each spool segment
+     * belongs to one mail
+     */
+    final Object takeLock = new Object();
+
+    /**
+     * {@code true} if a {@link LogEntry} with the send level has been written since the last check
+     */
+    final AtomicBoolean sendLevelReached = new AtomicBoolean();
+
+    /**
+     * timestamp to indicate when next mail can be sent
+     */
+    volatile Instant nextMessage;
+
+    /**
+     * timeout to process buffered {@link LogEntry} after interval time, guarded by this route
+     */
+    SharedScheduler.Timeout nextMessageTimeout;
+
+    /**
+     * @param name name of route, {@code null} for the default route
+     * @param level minimum level, {@code null} for all levels
+     * @param tags tags, {@code null} for all tags
+     * @param classPrefixes class name prefixes, {@code null} for all classes
+     * @param recipients recipients, {@code null} for default recipients
+     * @param subject subject, {@code null} for default subject
+     * @param aggregator aggregator or {@code null} if aggregation is disabled
+     */
+    MailRoute(final String name, final Level level, final Set<String> tags, final List<String> classPrefixes, final String recipients, final String subject,
+              final LogEntryAggregator aggregator)
+    {
+        this.name = name;
+        this.level = level;
+        this.tags = tags;
+        this.classPrefixes = classPrefixes;
+        this.recipients = recipients;
+        this.subject = subject;
+        this.aggregator = aggregator;
+    }
+
+    /**
+     * @return {@code true} if route selects log entries by level
+     */
+    boolean usesLevel()
+    {
+        return level != null;
+    }
+
+    /**
+     * @return {@code true} if route selects log entries by tag
+     */
+    boolean usesTag()
+    {
+        return tags != null;
+    }
+
+    /**
+     * @return {@code true} if route selects log entries by class name
+     */
+    boolean usesClass()
+    {
+        return classPrefixes != null;
+    }
+
+    /**
+     * @param logEntry log entry
+     * @return {@code true} if log entry is sent over this route
+     */
+    boolean matches(final LogEntry logEntry)
+    {
+        if (level != null && (logEntry.getLevel() == null || logEntry.getLevel().ordinal() < level.ordinal()))
+        {
+            return false;
+        }
+
+        if (tags != null && (logEntry.getTag() == null || !tags.contains(logEntry.getTag())))
+        {
+            return false;
+        }
+
+        if (classPrefixes != null)
+        {
+            String className = logEntry.getClassName();
+            if (className == null)
+            {
+                return false;
+            }
+            for (String prefix : classPrefixes)
+            {
+                if (className.startsWith(prefix))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * @return number of buffered {@link LogEntry} for next mail
+     */
+    int bufferedEntries()
+    {
+        return bufferedLogEntries.size() + (aggregator == null ? 0 : aggregator.size());
+    }
+
+    /**
+     * @return estimated size in bytes of buffered {@link LogEntry} for next mail
+     */
+    long bufferedBytes()
+    {
+        return bufferedLogEntries.bytes();
+    }
+
+    /**
+     * @return {@code true} if the next mail of this route has any content: buffered, dropped or suppressed
+     *         {@link LogEntry}, failed or discarded mails
+     */
+    boolean hasPending()
+    {
+        return bufferedEntries() > 0 || droppedLogEntries.count() > 0 || suppressedLogEntries.count() > 0 || failedMails.size() > 0 || discardedMails.get() > 0;
+    }
+
+    /**
+     * delete {@link #spool} segments of a sent or discarded mail
+     *
+     * @param segments spool segments
+     */
+    void deleteSpool(final List<Path> segments)
+    {
+        if (spool != null)
+        {
+            spool.delete(segments);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return name == null ? "default" : name;
+    }
+
+}
@@ -0,0 +1,218 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import org.tinylog.provider.InternalLogger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only spool for rendered log entries of {@link SimpleMailWriter}<br/>
+ * Accepted log entries are appended to the current segment file. When a mail batch is taken, the current segment is
+ * closed and belongs to this mail, it's deleted as soon as the mail has been sent. Segments left over by a crashed JVM
+ * are recovered on startup.<br/>
+ * Each record consists of length, CRC32 and UTF-8 bytes, so a record torn by a crash is detected and ignored.
+ */
+final class MailSpool
+{
+    /**
+     * file name prefix of segments
+     */
+    private static final String PREFIX = "mail-";
+
+    /**
+     * file name suffix of segments
+     */
+    private static final String SUFFIX = ".spool";
+
+    /**
+     * size of record header: length and CRC32
+     */
+    private static final int HEADER_SIZE = 8;
+
+    private final Path directory;
+    private final List<Path> recovered;
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    private final CRC32 crc = new CRC32();
+
+    private long sequence;
+    private Path current;
+    private FileChannel channel;
+
+    /**
+     * @param directory directory for segment files, must not be shared with other writers
+     * @throws IOException directory can't be created or read
+     */
+    MailSpool(final Path directory) throws IOException
+    {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX))
+        {
+            for (Path segment : stream)
+            {
+                long number = sequenceOf(segment);
+                if (number >= 0)
+                {
+                    segments.add(segment);
+                    sequence = Math.max(sequence, number + 1);
+                }
+            }
+        }
+        segments.sort((a, b) -> Long.compare(sequenceOf(a), sequenceOf(b)));
+        recovered = Collections.unmodifiableList(segments);
+    }
+
+    /**
+     * @return segments left over from a previous run, oldest first
+     */
+    List<Path> getRecovered()
+    {
+        return recovered;
+    }
+
+    /**
+     * Appends a rendered log entry to the current segment. The data is written to the operating system, so it survives
+     * a crash of the JVM.
+     *
+     * @param data rendered log entry as UTF-8 bytes
+     * @throws IOException segment can't be written
+     */
+    synchronized void append(final byte[] data) throws IOException
+    {
+        if (channel == null)
+        {
+            current = directory.resolve(PREFIX + sequence++ + SUFFIX);
+            channel = FileChannel.open(current, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        crc.reset();
+        crc.update(data);
+        header.clear();
+        header.putInt(data.length).putInt((int) crc.getValue()).flip();
+
+        ByteBuffer[] buffers = {header, ByteBuffer.wrap(data)};
+        while (buffers[1].hasRemaining())
+        {
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Closes the current segment, further log entries are appended to a new segment.
+     *
+     * @return closed segment, or empty list if nothing has been appended since the last call
+     * @throws IOException segment can't be closed
+     */
+    synchronized List<Path> rotate() throws IOException
+    {
+        if (channel == null)
+        {
+            return Collections.emptyList();
+        }
+
+        channel.close();
+        channel = null;
+        return Collections.singletonList(current);
+    }
+
+    /**
+     * Deletes segments of a sent mail.
+     *
+     * @param segments segments to delete
+     */
+    void delete(final List<Path> segments)
+    {
+        for (Path segment : segments)
+        {
+            try
+            {
+                Files.deleteIfExists(segment);
+            }
+            catch (IOException e)
+            {
+                InternalLogger.log(Level.ERROR, e, "Failed to delete spool file " + segment);
+            }
+        }
+    }
+
+    /**
+     * Closes the current segment, it's recovered on next startup.
+     *
+     * @throws IOException segment can't be closed
+     */
+    synchronized void close() throws IOException
+    {
+        if (channel != null)
+        {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Reads all complete records of a segment.
+     *
+     * @param segment segment file
+     * @return concatenated log entries of all complete records
+     * @throws IOException segment can't be read
+     */
+    static String read(final Path segment) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(segment));
+        StringBuilder builder = new StringBuilder();
+        CRC32 checksum = new CRC32();
+
+        while (buffer.remaining() >= HEADER_SIZE)
+        {
+            int length = buffer.getInt();
+            int expected = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+            {
+                break;
+            }
+
+            checksum.reset();
+            checksum.update(buffer.array(), buffer.position(), length);
+            if ((int) checksum.getValue() != expected)
+            {
+                break;
+            }
+
+            builder.append(new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + length);
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * @param segment segment file
+     * @return sequence number of segment, or -1 if it's not a segment file
+     */
+    private static long sequenceOf(final Path segment)
+    {
+        String name = segment.getFileName().toString();
+        try
+        {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        }
+        catch (NumberFormatException | IndexOutOfBoundsException e)
+        {
+            return -1;
+        }
+    }
+
+}
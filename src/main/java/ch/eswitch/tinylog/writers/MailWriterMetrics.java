@@ -0,0 +1,260 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import org.tinylog.provider.InternalLogger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of {@link SimpleMailWriter}, published as {@link SimpleMailWriterMXBean}<br/>
+ * Counters are {@link LongAdder}, so updating them on the write path doesn't contend between threads.
+ */
+final class MailWriterMetrics implements SimpleMailWriterMXBean
+{
+    /**
+     * domain and type of object names
+     */
+    static final String OBJECT_NAME_PREFIX = "ch.eswitch.tinylog.writers:type=SimpleMailWriter,name=";
+
+    /**
+     * upper bounds of send latency buckets
+     */
+    private static final long[] LATENCY_BOUNDS_MILLIS = {100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    final LongAdder accepted = new LongAdder();
+    final LongAdder filtered = new LongAdder();
+    final LongAdder dropped = new LongAdder();
+    final LongAdder sent = new LongAdder();
+    final LongAdder failed = new LongAdder();
+
+    private final AtomicLongArray latencyCounts = new AtomicLongArray(LATENCY_BOUNDS_MILLIS.length + 1);
+    private final LongAdder latencyTotal = new LongAdder();
+    private final AtomicLong latencyMax = new AtomicLong();
+    private final LongAdder latencyCount = new LongAdder();
+    private volatile long lastSendTime;
+
+    private final List<MailRoute> routes;
+    private final SendCircuitBreaker circuitBreaker;
+    private final MailRateLimiter rateLimiter;
+
+    private ObjectName objectName;
+
+    /**
+     * @param routes all routes of writer
+     * @param circuitBreaker circuit breaker of writer
+     * @param rateLimiter rate limiter of writer, or {@code null}
+     */
+    MailWriterMetrics(final List<MailRoute> routes, final SendCircuitBreaker circuitBreaker, final MailRateLimiter rateLimiter)
+    {
+        this.routes = routes;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @param name name of MBean
+     */
+    void register(final String name)
+    {
+        try
+        {
+            ObjectName on = new ObjectName(OBJECT_NAME_PREFIX + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(this, SimpleMailWriterMXBean.class, true), on);
+            objectName = on;
+        }
+        catch (JMException e)
+        {
+            InternalLogger.log(Level.WARN, e, "Failed to register MBean " + name);
+        }
+    }
+
+    void unregister()
+    {
+        if (objectName == null)
+        {
+            return;
+        }
+
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName))
+            {
+                server.unregisterMBean(objectName);
+            }
+        }
+        catch (JMException e)
+        {
+            InternalLogger.log(Level.WARN, e, "Failed to unregister MBean " + objectName);
+        }
+        objectName = null;
+    }
+
+    /**
+     * @return object name, {@code null} if not registered
+     */
+    ObjectName getObjectName()
+    {
+        return objectName;
+    }
+
+    /**
+     * @param success {@code true} if mail has been sent
+     * @param nanos latency of send in nanoseconds
+     */
+    void onSend(final boolean success, final long nanos)
+    {
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+        int bucket = 0;
+        while (bucket < LATENCY_BOUNDS_MILLIS.length && millis > LATENCY_BOUNDS_MILLIS[bucket])
+        {
+            bucket++;
+        }
+        latencyCounts.incrementAndGet(bucket);
+        latencyTotal.add(millis);
+        latencyCount.increment();
+        latencyMax.accumulateAndGet(millis, Math::max);
+
+        if (success)
+        {
+            sent.increment();
+            lastSendTime = System.currentTimeMillis();
+        }
+        else
+        {
+            failed.increment();
+        }
+    }
+
+    @Override
+    public long getBufferedEntries()
+    {
+        long entries = 0;
+        for (MailRoute route : routes)
+        {
+            entries += route.bufferedEntries();
+        }
+        return entries;
+    }
+
+    @Override
+    public long getBufferedBytes()
+    {
+        long bytes = 0;
+        for (MailRoute route : routes)
+        {
+            bytes += route.bufferedBytes();
+        }
+        return bytes;
+    }
+
+    @Override
+    public long getAcceptedEntries()
+    {
+        return accepted.sum();
+    }
+
+    @Override
+    public long getFilteredEntries()
+    {
+        return filtered.sum();
+    }
+
+    @Override
+    public long getDroppedEntries()
+    {
+        return dropped.sum();
+    }
+
+    @Override
+    public long getSuppressedEntries()
+    {
+        if (rateLimiter == null)
+        {
+            return 0;
+        }
+
+        long suppressed = 0;
+        for (Level level : Level.values())
+        {
+            suppressed += rateLimiter.getSuppressed(level);
+        }
+        return suppressed;
+    }
+
+    @Override
+    public long getSentMails()
+    {
+        return sent.sum();
+    }
+
+    @Override
+    public long getFailedSends()
+    {
+        return failed.sum();
+    }
+
+    @Override
+    public long getDeferredMails()
+    {
+        return rateLimiter == null ? 0 : rateLimiter.getDeferredMails();
+    }
+
+    @Override
+    public double getMailRate()
+    {
+        return rateLimiter == null ? 0 : rateLimiter.getMailRate();
+    }
+
+    @Override
+    public long getLastSendTime()
+    {
+        return lastSendTime;
+    }
+
+    @Override
+    public String getCircuitBreakerState()
+    {
+        return circuitBreaker.getState().name();
+    }
+
+    @Override
+    public long[] getSendLatencyBoundsMillis()
+    {
+        return LATENCY_BOUNDS_MILLIS.clone();
+    }
+
+    @Override
+    public long[] getSendLatencyCounts()
+    {
+        long[] counts = new long[latencyCounts.length()];
+        for (int i = 0; i < counts.length; i++)
+        {
+            counts[i] = latencyCounts.get(i);
+        }
+        return counts;
+    }
+
+    @Override
+    public double getSendLatencyMeanMillis()
+    {
+        long count = latencyCount.sum();
+        return count == 0 ? 0 : (double) latencyTotal.sum() / count;
+    }
+
+    @Override
+    public long getSendLatencyMaxMillis()
+    {
+        return latencyMax.get();
+    }
+
+}
@@ -7,6 +7,7 @@ import org.tinylog.core.LogEntryValue;
 import org.tinylog.provider.InternalLogger;
 import org.tinylog.writers.AbstractFormatPatternWriter;
 
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
@@ -15,14 +16,65 @@ import java.util.Map;
  * tinylog 2 Masked {@link org.tinylog.writers.ConsoleWriter}<br/>
  * This is a <a href="https://tinylog.org/v2/extending/#custom-writer">custom writer</a> for
  * <a href="https://tinylog.org/v2/">tinylog 2</a> logging framework to mask parts of log message.<br/>
- * see {@link MaskedWriterUtil} for description, configuration and usage
+ * see {@link MaskedWriterUtil} for description, configuration and usage<br/>
+ * <br/>
+ * If property {@code buffered} is enabled, log entries are written in batches directly to the file descriptors of
+ * stdout and stderr (see {@link ConsoleChannelOutput}). The batch is written if it exceeds
+ * {@value #PROPERTY_BUFFER_SIZE} bytes or after {@value #PROPERTY_FLUSH_INTERVAL}.<br/>
+ * <br/>
+ * If property {@value #PROPERTY_ASYNC} is enabled, rendered log entries are handed over to a bounded queue and written
+ * by a dedicated thread, so logging threads are not blocked by a stalled console (see {@link AsyncConsoleOutput}).
  *
  * @author Martin Schelldorfer, 2022
  */
 public final class MaskedConsoleWriter extends AbstractFormatPatternWriter {
 
+    /**
+     * Name of property in tinylog configuration file to define the size of the output buffer in bytes
+     */
+    static final String PROPERTY_BUFFER_SIZE = "buffersize";
+
+    /**
+     * Name of property in tinylog configuration file to define the maximum time log entries stay in the output
+     * buffer<br/>
+     * see {@link java.time.Duration#parse(CharSequence)} for supported values
+     */
+    static final String PROPERTY_FLUSH_INTERVAL = "flushinterval";
+
+    /**
+     * Name of property in tinylog configuration file to enable non-blocking output by a dedicated thread
+     */
+    static final String PROPERTY_ASYNC = "async";
+
+    /**
+     * Name of property in tinylog configuration file to define the maximum number of queued log entries
+     */
+    static final String PROPERTY_ASYNC_CAPACITY = PROPERTY_ASYNC + ".capacity";
+
+    /**
+     * Name of property in tinylog configuration file to define the behavior if the queue is full<br/>
+     * supported values are {@code block}, {@code drop lowest} and {@code drop newest}
+     */
+    static final String PROPERTY_ASYNC_OVERFLOW = PROPERTY_ASYNC + ".overflow";
+
+    /**
+     * Name of property in tinylog configuration file to define the interval for reporting dropped log entries<br/>
+     * see {@link java.time.Duration#parse(CharSequence)} for supported values
+     */
+    static final String PROPERTY_ASYNC_SUMMARY_INTERVAL = PROPERTY_ASYNC + ".summaryinterval";
+
     private final Level errorLevel;
 
+    /**
+     * batched output, {@code null} if log entries are printed to {@link System#out} and {@link System#err}
+     */
+    private final ConsoleChannelOutput channelOutput;
+
+    /**
+     * non-blocking output, {@code null} if log entries are written by the logging thread
+     */
+    private final AsyncConsoleOutput asyncOutput;
+
     private final MaskedWriterUtil maskedWriter;
 
     /** */
@@ -65,6 +117,68 @@ public final class MaskedConsoleWriter extends AbstractFormatPatternWriter {
             errorLevel = levelStream;
         }
 
+        if (getBooleanValue("buffered")) {
+            int bufferSize = ConsoleChannelOutput.DEFAULT_BUFFER_SIZE;
+            String propertyBufferSize = getStringValue(PROPERTY_BUFFER_SIZE);
+            if (propertyBufferSize != null) {
+                try {
+                    bufferSize = Integer.parseInt(propertyBufferSize.trim());
+                } catch (NumberFormatException e) {
+                    InternalLogger.log(Level.ERROR, "Invalid buffer size '" + propertyBufferSize + "', use default " + bufferSize);
+                }
+            }
+
+            Duration flushInterval = ConsoleChannelOutput.DEFAULT_FLUSH_INTERVAL;
+            String propertyFlushInterval = getStringValue(PROPERTY_FLUSH_INTERVAL);
+            if (propertyFlushInterval != null) {
+                try {
+                    flushInterval = Duration.parse(propertyFlushInterval.trim());
+                } catch (Exception e) {
+                    InternalLogger.log(Level.ERROR, "Invalid flush interval '" + propertyFlushInterval + "', use default " + flushInterval);
+                }
+            }
+
+            channelOutput = new ConsoleChannelOutput(getCharset(), bufferSize, flushInterval);
+        } else {
+            channelOutput = null;
+        }
+
+        if (getBooleanValue(PROPERTY_ASYNC)) {
+            int capacity = AsyncConsoleOutput.DEFAULT_CAPACITY;
+            String propertyCapacity = getStringValue(PROPERTY_ASYNC_CAPACITY);
+            if (propertyCapacity != null) {
+                try {
+                    capacity = Integer.parseInt(propertyCapacity.trim());
+                } catch (NumberFormatException e) {
+                    InternalLogger.log(Level.ERROR, "Invalid queue capacity '" + propertyCapacity + "', use default " + capacity);
+                }
+            }
+
+            AsyncConsoleOutput.OverflowPolicy policy = AsyncConsoleOutput.OverflowPolicy.DROP_LOWEST;
+            String propertyOverflow = getStringValue(PROPERTY_ASYNC_OVERFLOW);
+            if (propertyOverflow != null) {
+                try {
+                    policy = AsyncConsoleOutput.OverflowPolicy.parse(propertyOverflow);
+                } catch (IllegalArgumentException e) {
+                    InternalLogger.log(Level.ERROR, "Overflow must be \"block\", \"drop lowest\" or \"drop newest\", \"" + propertyOverflow + "\" is invalid");
+                }
+            }
+
+            Duration summaryInterval = AsyncConsoleOutput.DEFAULT_SUMMARY_INTERVAL;
+            String propertySummaryInterval = getStringValue(PROPERTY_ASYNC_SUMMARY_INTERVAL);
+            if (propertySummaryInterval != null) {
+                try {
+                    summaryInterval = Duration.parse(propertySummaryInterval.trim());
+                } catch (Exception e) {
+                    InternalLogger.log(Level.ERROR, "Invalid summary interval '" + propertySummaryInterval + "', use default " + summaryInterval);
+                }
+            }
+
+            asyncOutput = new AsyncConsoleOutput(capacity, policy, summaryInterval, Level.WARN.ordinal() >= errorLevel.ordinal(), channelOutput);
+        } else {
+            asyncOutput = null;
+        }
+
         maskedWriter = new MaskedWriterUtil(properties);
     }
 
@@ -79,7 +193,11 @@ public final class MaskedConsoleWriter extends AbstractFormatPatternWriter {
     public void write(LogEntry logEntry) {
         logEntry = maskedWriter.mask(logEntry);
 
-        if (logEntry.getLevel().ordinal() < errorLevel.ordinal()) {
+        if (asyncOutput != null) {
+            asyncOutput.write(logEntry.getLevel(), logEntry.getLevel().ordinal() >= errorLevel.ordinal(), render(logEntry));
+        } else if (channelOutput != null) {
+            channelOutput.write(logEntry.getLevel().ordinal() >= errorLevel.ordinal(), render(logEntry));
+        } else if (logEntry.getLevel().ordinal() < errorLevel.ordinal()) {
             System.out.print(render(logEntry));
         } else {
             System.err.print(render(logEntry));
@@ -88,10 +206,20 @@ public final class MaskedConsoleWriter extends AbstractFormatPatternWriter {
 
     @Override
     public void flush() {
+        // in non-blocking mode the output is flushed by the drain thread
+        if (asyncOutput == null && channelOutput != null) {
+            channelOutput.flush();
+        }
     }
 
     @Override
-    public void close() {
+    public void close() throws InterruptedException {
+        if (asyncOutput != null) {
+            asyncOutput.close();
+        }
+        if (channelOutput != null) {
+            channelOutput.close();
+        }
     }
 
 }
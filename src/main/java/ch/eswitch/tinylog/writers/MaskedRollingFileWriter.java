@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.GeneralSecurityException;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
@@ -46,6 +47,16 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
 
     private ByteArrayWriter writer;
 
+    /**
+     * {@link #converter} if log files are encrypted, otherwise {@code null}
+     */
+    private final EncryptingFileConverter encryptingConverter;
+
+    /**
+     * writes encrypted chunks directly to the current log file
+     */
+    private final EncryptingFileConverter.Output<IOException> encryptedOutput = (data, offset, length) -> writer.write(data, offset, length);
+
     private final MaskedWriterUtil maskedWriter;
 
     /**
@@ -69,7 +80,8 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
 
         path = new DynamicPath(getFileName());
         policies = createPolicies(getStringValue("policies"));
-        converter = createConverter(getStringValue("convert"));
+        converter = createConverter(getStringValue("convert"), properties);
+        encryptingConverter = converter instanceof EncryptingFileConverter ? (EncryptingFileConverter) converter : null;
         backups = properties.containsKey("backups") ? Integer.parseInt(getStringValue("backups")) : -1;
         linkToLatest = properties.containsKey("latest") ? new DynamicPath(getStringValue("latest")) : null;
 
@@ -173,6 +185,10 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
     {
         if (!canBeContinued(data, policies))
         {
+            WriterEvents.Rollover event = new WriterEvents.Rollover();
+            event.begin();
+
+            writeConverterTail(true);
             writer.close();
             converter.close();
 
@@ -184,14 +200,49 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
                 policy.reset();
             }
 
+            if (event.shouldCommit())
+            {
+                event.fileName = fileName;
+                event.commit();
+            }
+
             if (backups >= 0)
             {
                 deleteBackups(getAllFileTuplesWithoutLinks(converter.getBackupSuffix()), backups);
             }
         }
 
-        byte[] convertedData = converter.write(data);
-        writer.write(convertedData, 0, convertedData.length);
+        if (encryptingConverter != null)
+        {
+            // chunks are only sealed when full, flushed or closed, even if output isn't buffered
+            encryptingConverter.write(data, encryptedOutput);
+        }
+        else
+        {
+            byte[] convertedData = converter.write(data);
+            writer.write(convertedData, 0, convertedData.length);
+        }
+    }
+
+    /**
+     * Writes data which is still pending in an {@link EncryptingFileConverter} unsynchronized.
+     *
+     * @param last {@code true} if the current log file will be closed
+     * @throws IOException Writing failed
+     */
+    private void writeConverterTail(final boolean last) throws IOException
+    {
+        if (encryptingConverter != null)
+        {
+            if (last)
+            {
+                encryptingConverter.finish(encryptedOutput);
+            }
+            else
+            {
+                encryptingConverter.flush(encryptedOutput);
+            }
+        }
     }
 
     /**
@@ -201,6 +252,7 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
      */
     private void internalFlush() throws IOException
     {
+        writeConverterTail(false);
         writer.flush();
     }
 
@@ -212,6 +264,7 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
      */
     private void internalClose() throws IOException, InterruptedException
     {
+        writeConverterTail(true);
         writer.close();
         converter.close();
         converter.shutdown();
@@ -257,7 +310,8 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
     private ByteArrayWriter createByteArrayWriterAndLinkLatest(final String fileName, final boolean append, final boolean buffered, final Charset charset) throws IOException
     {
         converter.open(fileName);
-        ByteArrayWriter writer = createByteArrayWriter(fileName, append, buffered, false, false, charset);
+        // encrypted chunks are written at once, buffering them would only copy them
+        ByteArrayWriter writer = createByteArrayWriter(fileName, append, buffered && encryptingConverter == null, false, false, charset);
         if (linkToLatest != null)
         {
             File logFile = new File(fileName);
@@ -335,15 +389,37 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
      * Creates the file converter from a nullable string.
      *
      * @param property Nullable string with converter to create
+     * @param properties Configuration for writer
      * @return Created file converter
+     * @throws IOException Public key for encryption cannot be read
+     * @throws IllegalArgumentException Public key for encryption is invalid or missing in configuration
      */
-    private static FileConverter createConverter(final String property)
+    private static FileConverter createConverter(final String property, final Map<String, String> properties) throws IOException
     {
         if (property == null
                 || property.isEmpty())
         {
             return new NopFileConverter();
         }
+        else if (EncryptingFileConverter.NAME.equalsIgnoreCase(property.trim()))
+        {
+            String publicKey = properties.get(EncryptingFileConverter.PROPERTY_PUBLIC_KEY);
+            if (publicKey == null || publicKey.trim().isEmpty())
+            {
+                throw new IllegalArgumentException("Property '" + EncryptingFileConverter.PROPERTY_PUBLIC_KEY + "' is missing for encrypted log files");
+            }
+
+            String chunkSize = properties.get(EncryptingFileConverter.PROPERTY_CHUNK_SIZE);
+            try
+            {
+                return new EncryptingFileConverter(EncryptingFileConverter.loadPublicKey(publicKey.trim()),
+                                                   chunkSize == null ? EncryptingFileConverter.DEFAULT_CHUNK_SIZE : Integer.parseInt(chunkSize.trim()));
+            }
+            catch (GeneralSecurityException ex)
+            {
+                throw new IllegalArgumentException("Invalid public key '" + publicKey + "' for encrypted log files", ex);
+            }
+        }
         else
         {
             if (RuntimeProvider.getProcessId() == Long.MIN_VALUE)
@@ -398,11 +474,21 @@ public final class MaskedRollingFileWriter extends AbstractFormatPatternWriter
      */
     private static void deleteBackups(final List<FileTuple> files, final int count)
     {
+        WriterEvents.BackupDeletion event = new WriterEvents.BackupDeletion();
+        event.begin();
+
         for (int i = count; i < files.size(); ++i)
         {
             files.get(i)
                  .delete();
         }
+
+        if (files.size() > count && event.shouldCommit())
+        {
+            event.deletedFiles = files.size() - count;
+            event.keptFiles = count;
+            event.commit();
+        }
     }
 
 }
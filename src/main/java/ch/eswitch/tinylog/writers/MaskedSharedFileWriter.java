@@ -0,0 +1,399 @@
+package ch.eswitch.tinylog.writers;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.provider.InternalLogger;
+import org.tinylog.writers.AbstractFormatPatternWriter;
+
+/**
+ * tinylog 2 Masked {@link org.tinylog.writers.SharedFileWriter}<br/>
+ * This is a <a href="https://tinylog.org/v2/extending/#custom-writer">custom writer</a> for
+ * <a href="https://tinylog.org/v2/">tinylog 2</a> logging framework to mask parts of log message.<br/>
+ * see {@link MaskedWriterUtil} for description, configuration and usage<br/>
+ * <br/>
+ * Multiple JVMs can write to the same log file. Writes are coordinated between processes by an exclusive
+ * {@link FileLock}. Rendered log entries are collected in a buffer of {@value #PROPERTY_BUFFER_SIZE} bytes and the
+ * whole buffer is appended to the log file with one single lock acquisition.<br/>
+ * The buffer is written if it is full, if the writer is flushed (e.g. after each batch of the tinylog writing thread)
+ * or closed. If neither {@code buffered} nor {@code writingthread} is enabled, each log entry is written
+ * immediately.<br/>
+ * If {@code append} is disabled, the log file is only truncated by the first process which opens it.<br/>
+ * File locks are held by the whole JVM, therefore all writers of the same log file in one JVM share one
+ * {@link SharedFile} and serialize their writes on it.
+ *
+ * @author Martin Schelldorfer, 2026
+ */
+public final class MaskedSharedFileWriter extends AbstractFormatPatternWriter
+{
+    /**
+     * Name of property in tinylog configuration file to define the size of the write buffer in bytes
+     */
+    static final String PROPERTY_BUFFER_SIZE = "buffersize";
+
+    /**
+     * default size of the write buffer in bytes
+     */
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Position of the region which is locked shared by each process while the log file is open. The region is
+     * outside of the region used for writing, so both locks never overlap.
+     */
+    private static final long PRESENCE_LOCK_POSITION = Long.MAX_VALUE - 1;
+
+    /**
+     * Position of the region which is locked exclusive by a process while it opens the log file, so no other process
+     * can truncate it between the check for other processes and taking the presence lock.
+     */
+    private static final long OPEN_LOCK_POSITION = Long.MAX_VALUE - 2;
+
+    /**
+     * log files opened by writers of this JVM, guarded by itself
+     */
+    private static final Map<Path, SharedFile> OPEN_FILES = new HashMap<>();
+
+    /**
+     * Log file opened by one or more writers of this JVM
+     */
+    private static final class SharedFile
+    {
+        final Path file;
+        final FileChannel channel;
+
+        /**
+         * shared lock held while the log file is open to signal other processes that the file is in use
+         */
+        final FileLock presenceLock;
+
+        /**
+         * number of writers which use this file, guarded by {@link #OPEN_FILES}
+         */
+        int references;
+
+        private SharedFile(final Path file, final FileChannel channel, final FileLock presenceLock)
+        {
+            this.file = file;
+            this.channel = channel;
+            this.presenceLock = presenceLock;
+        }
+
+        /**
+         * @param file log file
+         * @param append {@code false} to truncate the log file, if no other process holds it open
+         * @return opened log file
+         * @throws IOException Log file cannot be opened for write access
+         */
+        static SharedFile open(final Path file, final boolean append) throws IOException
+        {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try (FileLock opening = channel.lock(OPEN_LOCK_POSITION, 1, false))
+            {
+                // if no other process holds the file open, this process is the first one and may truncate it
+                if (!append)
+                {
+                    FileLock exclusive = channel.tryLock(PRESENCE_LOCK_POSITION, 1, false);
+                    if (exclusive != null)
+                    {
+                        try
+                        {
+                            channel.truncate(0);
+                        }
+                        finally
+                        {
+                            exclusive.release();
+                        }
+                    }
+                }
+
+                // taken before the open lock is released
+                return new SharedFile(file, channel, channel.lock(PRESENCE_LOCK_POSITION, 1, true));
+            }
+            catch (IOException | RuntimeException e)
+            {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Appends the passed data to the end of the log file while holding an exclusive lock.
+         *
+         * @param data Data to write
+         * @throws IOException Writing failed
+         */
+        synchronized void write(final ByteBuffer data) throws IOException
+        {
+            try (FileLock lock = channel.lock(0, OPEN_LOCK_POSITION, false))
+            {
+                long position = channel.size();
+                while (data.hasRemaining())
+                {
+                    position += channel.write(data, position);
+                }
+            }
+        }
+
+        private void close() throws IOException
+        {
+            try
+            {
+                if (presenceLock.isValid())
+                {
+                    presenceLock.release();
+                }
+            }
+            finally
+            {
+                channel.close();
+            }
+        }
+    }
+
+    private final Charset charset;
+    private final SharedFile sharedFile;
+    private final boolean writingThread;
+
+    /**
+     * buffer with rendered log entries which are not yet written to the log file
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * write each log entry immediately, if neither buffered nor writing thread is enabled
+     */
+    private final boolean immediate;
+
+    private final MaskedWriterUtil maskedWriter;
+
+    /**
+     * {@code true} if {@link #sharedFile} has been released
+     */
+    private boolean closed;
+
+    /**
+     * @throws IOException Log file cannot be opened for write access
+     * @throws IllegalArgumentException Log file is not defined in configuration
+     */
+    public MaskedSharedFileWriter() throws IOException
+    {
+        this(Collections.<String, String> emptyMap());
+    }
+
+    /**
+     * @param properties Configuration for writer
+     *
+     * @throws IOException Log file cannot be opened for write access
+     * @throws IllegalArgumentException Log file is not defined in configuration
+     */
+    public MaskedSharedFileWriter(final Map<String, String> properties) throws IOException
+    {
+        super(properties);
+
+        Path file = Paths.get(getFileName()).toAbsolutePath();
+        boolean append = getBooleanValue("append");
+        boolean buffered = getBooleanValue("buffered");
+        writingThread = getBooleanValue("writingthread");
+        immediate = !buffered && !writingThread;
+
+        int bufferSize = DEFAULT_BUFFER_SIZE;
+        String propertyBufferSize = getStringValue(PROPERTY_BUFFER_SIZE);
+        if (propertyBufferSize != null && propertyBufferSize.length() > 0)
+        {
+            try
+            {
+                bufferSize = Integer.parseInt(propertyBufferSize.trim());
+            }
+            catch (NumberFormatException e)
+            {
+                InternalLogger.log(Level.ERROR, "Invalid buffer size '" + propertyBufferSize + "', use default " + DEFAULT_BUFFER_SIZE);
+            }
+        }
+
+        charset = getCharset();
+        buffer = ByteBuffer.allocate(Math.max(bufferSize, 1024));
+
+        if (file.getParent() != null)
+        {
+            file.getParent().toFile().mkdirs();
+        }
+
+        sharedFile = open(file.normalize(), append);
+
+        maskedWriter = new MaskedWriterUtil(properties);
+    }
+
+    @Override
+    public void write(LogEntry logEntry) throws IOException
+    {
+        logEntry = maskedWriter.mask(logEntry);
+
+        byte[] data = render(logEntry).getBytes(charset);
+        if (writingThread)
+        {
+            internalWrite(data);
+        }
+        else
+        {
+            synchronized (buffer)
+            {
+                internalWrite(data);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException
+    {
+        if (writingThread)
+        {
+            writeBuffer();
+        }
+        else
+        {
+            synchronized (buffer)
+            {
+                writeBuffer();
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        if (writingThread)
+        {
+            internalClose();
+        }
+        else
+        {
+            synchronized (buffer)
+            {
+                internalClose();
+            }
+        }
+    }
+
+    /**
+     * Adds a passed byte array to the buffer unsynchronized and writes the buffer if required.
+     *
+     * @param data Byte array to output
+     * @throws IOException Writing failed
+     */
+    private void internalWrite(final byte[] data) throws IOException
+    {
+        if (data.length > buffer.remaining())
+        {
+            writeBuffer();
+        }
+
+        if (data.length > buffer.capacity())
+        {
+            // log entry is larger than the buffer, write it directly
+            sharedFile.write(ByteBuffer.wrap(data));
+        }
+        else
+        {
+            buffer.put(data);
+            if (immediate)
+            {
+                writeBuffer();
+            }
+        }
+    }
+
+    /**
+     * Writes all buffered log entries unsynchronized.
+     *
+     * @throws IOException Writing failed
+     */
+    private void writeBuffer() throws IOException
+    {
+        if (buffer.position() > 0)
+        {
+            buffer.flip();
+            try
+            {
+                sharedFile.write(buffer);
+            }
+            finally
+            {
+                buffer.clear();
+            }
+        }
+    }
+
+    /**
+     * Opens a log file or shares it with other writers of this JVM, which already opened it.
+     *
+     * @param file log file
+     * @param append {@code false} to truncate the log file, if no other writer holds it open
+     * @return opened log file
+     * @throws IOException Log file cannot be opened for write access
+     */
+    private static SharedFile open(final Path file, final boolean append) throws IOException
+    {
+        synchronized (OPEN_FILES)
+        {
+            SharedFile sharedFile = OPEN_FILES.get(file);
+            if (sharedFile == null)
+            {
+                sharedFile = SharedFile.open(file, append);
+                OPEN_FILES.put(file, sharedFile);
+            }
+            sharedFile.references++;
+            return sharedFile;
+        }
+    }
+
+    /**
+     * Closes a log file, if no other writer of this JVM uses it anymore.
+     *
+     * @param sharedFile log file
+     * @throws IOException Closing failed
+     */
+    private static void release(final SharedFile sharedFile) throws IOException
+    {
+        synchronized (OPEN_FILES)
+        {
+            if (--sharedFile.references == 0)
+            {
+                OPEN_FILES.remove(sharedFile.file);
+                sharedFile.close();
+            }
+        }
+    }
+
+    /**
+     * Writes all buffered log entries and closes the log file unsynchronized.
+     *
+     * @throws IOException Closing failed
+     */
+    private void internalClose() throws IOException
+    {
+        try
+        {
+            writeBuffer();
+        }
+        finally
+        {
+            if (!closed)
+            {
+                closed = true;
+                release(sharedFile);
+            }
+        }
+    }
+
+}
@@ -24,14 +24,17 @@ import java.util.Map;
 class MaskedWriterUtil
 {
     private static final String PROPERTY_FILTER = "filter.";
+    private static final String PROPERTY_PREFIX = "prefix";
+    private static final String PROPERTY_SUFFIX = "suffix";
+    private static final String PROPERTY_FIXED_LENGTH = "fixedlength";
     /**
      * Name of Prefix property in tinylog configuration file
      */
-    static final String PROPERTY_FILTER_PREFIX = PROPERTY_FILTER + "prefix";
+    static final String PROPERTY_FILTER_PREFIX = PROPERTY_FILTER + PROPERTY_PREFIX;
     /**
      * Name of Suffix property in tinylog configuration file
      */
-    static final String PROPERTY_FILTER_SUFFIX = PROPERTY_FILTER + "suffix";
+    static final String PROPERTY_FILTER_SUFFIX = PROPERTY_FILTER + PROPERTY_SUFFIX;
 
     /**
      * Name of property in tinylog configuration file to define a fixed length property for masking the log message<br/>
@@ -39,7 +42,7 @@ class MaskedWriterUtil
      * characters.<br/>
      * The number of characters specified by this property are masked (replaced) after {@value PROPERTY_FILTER_PREFIX}
      */
-    static final String PROPERTY_FILTER_FIXED_LENGTH = PROPERTY_FILTER + "fixedlength";
+    static final String PROPERTY_FILTER_FIXED_LENGTH = PROPERTY_FILTER + PROPERTY_FIXED_LENGTH;
 
     /**
      * Name of property in tinylog configuration file to limit the number of characters to search in log message<br/>
@@ -79,12 +82,35 @@ class MaskedWriterUtil
      * @param properties tinylog configuration properties
      */
     public MaskedWriterUtil(Map<String, String> properties)
+    {
+        this(properties, PROPERTY_FILTER, "");
+    }
+
+    /**
+     * all properties have the same prefix instead of {@value PROPERTY_FILTER}, e.g. <code>mask.prefix1</code>,
+     * <code>mask.suffix1</code> and <code>mask.replacecharacter</code> for key prefix <code>mask.</code>
+     *
+     * @param properties tinylog configuration properties
+     * @param keyPrefix prefix of all property names
+     */
+    MaskedWriterUtil(Map<String, String> properties, String keyPrefix)
+    {
+        this(properties, keyPrefix, keyPrefix);
+    }
+
+    /**
+     *
+     * @param properties tinylog configuration properties
+     * @param filterKeyPrefix prefix of prefix, suffix and fixed length property names
+     * @param keyPrefix prefix of replace character and search length property names
+     */
+    private MaskedWriterUtil(Map<String, String> properties, String filterKeyPrefix, String keyPrefix)
     {
         // initialize filter list
-        filters = createFilter(properties);
+        filters = createFilter(properties, filterKeyPrefix);
 
         // initialize replaceCharacter field
-        String propertyReplaceCharacter = properties.get(PROPERTY_REPLACE_CHARACTER);
+        String propertyReplaceCharacter = properties.get(keyPrefix + PROPERTY_REPLACE_CHARACTER);
         if (propertyReplaceCharacter != null && propertyReplaceCharacter.length() > 0)
             replaceCharacter = propertyReplaceCharacter.charAt(0);
         else
@@ -92,7 +118,7 @@ class MaskedWriterUtil
 
         // initialize searchLength field
         int searchLengthParsed = -1;
-        String propertySearchLength = properties.get(PROPERTY_SEARCH_LENGTH);
+        String propertySearchLength = properties.get(keyPrefix + PROPERTY_SEARCH_LENGTH);
         if (propertySearchLength != null && propertySearchLength.length() > 0)
         {
             try
@@ -110,18 +136,22 @@ class MaskedWriterUtil
      * create filter list based on tinylog configuration properties
      *
      * @param properties configuration properties
+     * @param filterKeyPrefix prefix of prefix, suffix and fixed length property names
      * @return filter list
      */
-    private static ArrayList<MaskingFilter> createFilter(Map<String, String> properties)
+    private static ArrayList<MaskingFilter> createFilter(Map<String, String> properties, String filterKeyPrefix)
     {
         ArrayList<MaskingFilter> filters = new ArrayList<>();
+        final String propertyPrefix = filterKeyPrefix + PROPERTY_PREFIX;
+        final String propertySuffix = filterKeyPrefix + PROPERTY_SUFFIX;
+        final String propertyFixedLength = filterKeyPrefix + PROPERTY_FIXED_LENGTH;
 
         properties.forEach((keyPrefix, valuePrefix) -> {
-            if (keyPrefix.startsWith(PROPERTY_FILTER_PREFIX) && valuePrefix != null && valuePrefix.length() > 0)
+            if (keyPrefix.startsWith(propertyPrefix) && valuePrefix != null && valuePrefix.length() > 0)
             {
-                String keyExtension = keyPrefix.substring(PROPERTY_FILTER_PREFIX.length());
-                String valueSuffix = properties.get(PROPERTY_FILTER_SUFFIX + keyExtension);
-                String valueFixedLength = properties.get(PROPERTY_FILTER_FIXED_LENGTH + keyExtension);
+                String keyExtension = keyPrefix.substring(propertyPrefix.length());
+                String valueSuffix = properties.get(propertySuffix + keyExtension);
+                String valueFixedLength = properties.get(propertyFixedLength + keyExtension);
                 if ((valueSuffix != null && valueSuffix.length() > 0) || (valueFixedLength != null && valueFixedLength.length() > 0))
                     filters.add(new MaskingFilter(valuePrefix, valueSuffix, valueFixedLength));
             }
@@ -143,7 +173,11 @@ class MaskedWriterUtil
         if (message == null || message.length() == 0 || filters.size() == 0)
             return logEntry;
 
-        boolean masked = false;
+        // recorded only if enabled and slower than its threshold
+        WriterEvents.Mask event = new WriterEvents.Mask();
+        event.begin();
+
+        int hits = 0;
 
         // limit log message length
         if(searchLength > 0)
@@ -167,7 +201,7 @@ class MaskedWriterUtil
                         for (int i = posPrefix + f.prefix.length(); i < posSuffix; i++)
                             sbMessage.setCharAt(i, replaceCharacter);
 
-                        masked = true;
+                        hits++;
                     }
                 }
                 else if (f.fixedLength > 0)
@@ -176,12 +210,12 @@ class MaskedWriterUtil
                     for (int i = start; i < Math.min(start + f.fixedLength, sbMessage.length()); i++)
                         sbMessage.setCharAt(i, replaceCharacter);
 
-                    masked = true;
+                    hits++;
                 }
             }
         }
 
-        if (masked)
+        if (hits > 0)
         {
             if(searchLength > 0 && message.length() < logEntry.getMessage().length())
                 sbMessage.append(logEntry.getMessage().substring(searchLength));
@@ -191,6 +225,14 @@ class MaskedWriterUtil
                     .getLineNumber(), logEntry.getTag(), logEntry.getLevel(), sbMessage.toString(), logEntry.getException());
         }
 
+        if (event.shouldCommit())
+        {
+            event.messageLength = logEntry.getMessage().length();
+            event.filters = filters.size();
+            event.ruleHits = hits;
+            event.commit();
+        }
+
         return logEntry;
     }
 }
@@ -0,0 +1,206 @@
+package ch.eswitch.tinylog.writers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Case-insensitive matcher for multiple groups of search strings<br/>
+ * All search strings are compiled into one deterministic automaton (Aho-Corasick), so a text is scanned once for all
+ * search strings without converting it to lower case and without allocating memory. The result is a bit mask of all
+ * groups with at least one search string contained in the text.
+ */
+final class MultiPatternMatcher
+{
+    /**
+     * transitions of all states, {@code transitions[state * alphabetSize + symbol]}
+     */
+    private final int[] transitions;
+
+    /**
+     * bit mask of matched groups per state
+     */
+    private final int[] output;
+
+    /**
+     * symbols of ASCII characters, -1 if character is not part of any search string
+     */
+    private final int[] asciiSymbols = new int[128];
+
+    /**
+     * sorted non-ASCII characters of all search strings, the symbol is the number of ASCII symbols + index
+     */
+    private final char[] otherCharacters;
+
+    private final int alphabetSize;
+
+    /**
+     * @param groups groups of search strings, the group index is the bit position in the result of
+     *            {@link #match(CharSequence, int)}
+     */
+    MultiPatternMatcher(final List<List<String>> groups)
+    {
+        // build alphabet of all folded characters
+        Arrays.fill(asciiSymbols, -1);
+        StringBuilder others = new StringBuilder();
+        int asciiCount = 0;
+        for (List<String> group : groups)
+        {
+            for (String pattern : group)
+            {
+                for (int i = 0; i < pattern.length(); i++)
+                {
+                    char c = fold(pattern.charAt(i));
+                    if (c < 128)
+                    {
+                        if (asciiSymbols[c] < 0)
+                        {
+                            asciiSymbols[c] = asciiCount++;
+                        }
+                    }
+                    else if (others.indexOf(String.valueOf(c)) < 0)
+                    {
+                        others.append(c);
+                    }
+                }
+            }
+        }
+        otherCharacters = others.toString().toCharArray();
+        Arrays.sort(otherCharacters);
+        final int asciiSize = asciiCount;
+        alphabetSize = Math.max(asciiSize + otherCharacters.length, 1);
+
+        // build trie
+        List<int[]> trie = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        trie.add(newRow());
+        outputs.add(0);
+        for (int g = 0; g < groups.size(); g++)
+        {
+            for (String pattern : groups.get(g))
+            {
+                if (pattern.isEmpty())
+                {
+                    continue;
+                }
+
+                int state = 0;
+                for (int i = 0; i < pattern.length(); i++)
+                {
+                    int symbol = symbol(fold(pattern.charAt(i)), asciiSize);
+                    if (trie.get(state)[symbol] <= 0)
+                    {
+                        trie.get(state)[symbol] = trie.size();
+                        trie.add(newRow());
+                        outputs.add(0);
+                    }
+                    state = trie.get(state)[symbol];
+                }
+                outputs.set(state, outputs.get(state) | (1 << g));
+            }
+        }
+
+        // compute failure links breadth-first and complete all transitions
+        int states = trie.size();
+        int[] failure = new int[states];
+        transitions = new int[states * alphabetSize];
+        output = new int[states];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+        for (int symbol = 0; symbol < alphabetSize; symbol++)
+        {
+            int next = trie.get(0)[symbol];
+            if (next > 0)
+            {
+                failure[next] = 0;
+                queue.add(next);
+                transitions[symbol] = next;
+            }
+        }
+        output[0] = outputs.get(0);
+
+        while (!queue.isEmpty())
+        {
+            int state = queue.poll();
+            output[state] = outputs.get(state) | output[failure[state]];
+            for (int symbol = 0; symbol < alphabetSize; symbol++)
+            {
+                int next = trie.get(state)[symbol];
+                if (next > 0)
+                {
+                    failure[next] = transitions[failure[state] * alphabetSize + symbol];
+                    queue.add(next);
+                    transitions[state * alphabetSize + symbol] = next;
+                }
+                else
+                {
+                    transitions[state * alphabetSize + symbol] = transitions[failure[state] * alphabetSize + symbol];
+                }
+            }
+        }
+    }
+
+    /**
+     * @param text text to search, can be {@code null}
+     * @param stopMask stop searching as soon as one of these groups is matched
+     * @return bit mask of all matched groups
+     */
+    int match(final CharSequence text, final int stopMask)
+    {
+        if (text == null)
+        {
+            return 0;
+        }
+
+        int result = 0;
+        int state = 0;
+        int asciiSize = alphabetSize - otherCharacters.length;
+        for (int i = 0; i < text.length(); i++)
+        {
+            char c = fold(text.charAt(i));
+            int symbol;
+            if (c < 128)
+            {
+                symbol = asciiSymbols[c];
+            }
+            else
+            {
+                int index = Arrays.binarySearch(otherCharacters, c);
+                symbol = index < 0 ? -1 : asciiSize + index;
+            }
+
+            state = symbol < 0 ? 0 : transitions[state * alphabetSize + symbol];
+            result |= output[state];
+            if ((result & stopMask) != 0)
+            {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private int[] newRow()
+    {
+        return new int[alphabetSize];
+    }
+
+    private int symbol(final char folded, final int asciiSize)
+    {
+        return folded < 128 ? asciiSymbols[folded] : asciiSize + Arrays.binarySearch(otherCharacters, folded);
+    }
+
+    /**
+     * @param c character
+     * @return case-folded character
+     */
+    private static char fold(final char c)
+    {
+        if (c < 128)
+        {
+            return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+
+}
@@ -0,0 +1,187 @@
+package ch.eswitch.tinylog.writers;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Circuit breaker with exponential backoff for sending mails<br/>
+ * After a failed send, the next send is delayed by an exponentially growing, jittered backoff. After
+ * {@link #threshold} consecutive failures the breaker opens: no mail is sent until the backoff has passed, then one
+ * trial send decides whether the breaker closes again or stays open with a longer backoff.
+ */
+final class SendCircuitBreaker
+{
+    /**
+     * state of circuit breaker
+     */
+    enum State
+    {
+        /**
+         * mails are sent, possibly delayed by backoff after a failure
+         */
+        CLOSED,
+        /**
+         * too many consecutive failures, no mail is sent until backoff has passed
+         */
+        OPEN,
+        /**
+         * one trial send is in progress
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * default delay after first failure
+     */
+    static final Duration DEFAULT_DELAY = Duration.ofSeconds(5);
+
+    /**
+     * default maximum delay
+     */
+    static final Duration DEFAULT_MAX_DELAY = Duration.ofMinutes(15);
+
+    /**
+     * default number of consecutive failures to open the breaker
+     */
+    static final int DEFAULT_THRESHOLD = 3;
+
+    private final long delayMillis;
+    private final long maxDelayMillis;
+    private final int threshold;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long retryAt;
+    private long failures;
+    private long opened;
+
+    /**
+     * @param delay delay after first failure
+     * @param maxDelay maximum delay
+     * @param threshold number of consecutive failures to open the breaker
+     */
+    SendCircuitBreaker(final Duration delay, final Duration maxDelay, final int threshold)
+    {
+        this.delayMillis = Math.max(delay.toMillis(), 1);
+        this.maxDelayMillis = Math.max(maxDelay.toMillis(), delayMillis);
+        this.threshold = Math.max(threshold, 1);
+    }
+
+    /**
+     * @param now current time in milliseconds
+     * @return {@code true} if a mail can be sent now, {@code false} if sending must wait for the backoff or a trial
+     *         send
+     */
+    synchronized boolean tryAcquire(final long now)
+    {
+        switch (state)
+        {
+            case OPEN:
+                if (now - retryAt < 0)
+                {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                return true;
+
+            case HALF_OPEN:
+                return false;
+
+            default:
+                return consecutiveFailures == 0 || now - retryAt >= 0;
+        }
+    }
+
+    /**
+     * trial send acquired by {@link #tryAcquire(long)} has not been started, because there was nothing to send
+     */
+    synchronized void release()
+    {
+        if (state == State.HALF_OPEN)
+        {
+            state = State.OPEN;
+        }
+    }
+
+    /**
+     * mail has been sent successfully, closes the breaker
+     *
+     * @return {@code true} if the breaker was not closed before
+     */
+    synchronized boolean onSuccess()
+    {
+        boolean wasOpen = state != State.CLOSED;
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        return wasOpen;
+    }
+
+    /**
+     * sending mail has failed
+     *
+     * @param now current time in milliseconds
+     * @return delay in milliseconds until the next send is allowed
+     */
+    synchronized long onFailure(final long now)
+    {
+        failures++;
+        consecutiveFailures++;
+
+        // exponential backoff with jitter between half and full delay, so several writers don't retry in lockstep
+        int exponent = Math.min(consecutiveFailures - 1, 62);
+        long backoff = delayMillis > (maxDelayMillis >> exponent) ? maxDelayMillis : delayMillis << exponent;
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        retryAt = now + delay;
+
+        if (state == State.HALF_OPEN || consecutiveFailures >= threshold)
+        {
+            if (state != State.OPEN)
+            {
+                opened++;
+            }
+            state = State.OPEN;
+        }
+        return delay;
+    }
+
+    /**
+     * @return current state
+     */
+    synchronized State getState()
+    {
+        return state;
+    }
+
+    /**
+     * @return number of failures since last successful send
+     */
+    synchronized int getConsecutiveFailures()
+    {
+        return consecutiveFailures;
+    }
+
+    /**
+     * @return total number of failures
+     */
+    synchronized long getFailures()
+    {
+        return failures;
+    }
+
+    /**
+     * @return number of times the breaker has been opened
+     */
+    synchronized long getOpened()
+    {
+        return opened;
+    }
+
+    /**
+     * @return time in milliseconds when the next send is allowed after a failure
+     */
+    synchronized long getRetryAt()
+    {
+        return retryAt;
+    }
+
+}
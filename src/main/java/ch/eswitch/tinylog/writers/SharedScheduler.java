@@ -0,0 +1,315 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.Level;
+import org.tinylog.provider.InternalLogger;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer and worker threads shared by all writers of this library: {@link SimpleMailWriter} dispatches and sends mails
+ * on them, {@link MaskedConsoleWriter} times the flushes of its buffered output (see {@link ConsoleChannelOutput})<br/>
+ * Timeouts are kept in a hashed wheel: scheduling and cancelling is O(1) and doesn't wake up the timer thread, which
+ * only advances the wheel once per tick and parks while no timeout is pending. Expired tasks and all other work of
+ * the writers run on shared worker threads (see {@link WorkerThreads}), none of them exist while idle. Both are
+ * started lazily on first use.<br/>
+ * The number of platform worker threads is fixed to the sum of the threads reserved by all writers (see
+ * {@link #reserveWorkers(int)}), further tasks are queued, so the number of threads doesn't grow with the load.
+ */
+final class SharedScheduler
+{
+    /**
+     * duration of one tick of the wheel
+     */
+    static final long TICK_MILLIS = 100;
+
+    /**
+     * number of buckets of the wheel, a power of two
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * scheduled task, can be cancelled
+     */
+    static final class Timeout
+    {
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private long remainingRounds;
+
+        private Timeout(final Runnable task, final long deadline)
+        {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Cancels the task, if it has not been started yet.
+         */
+        void cancel()
+        {
+            if (cancelled.compareAndSet(false, true))
+            {
+                getInstance().pending.decrementAndGet();
+            }
+        }
+
+        /**
+         * @return {@code true} if the task has been cancelled or has been started
+         */
+        boolean isDone()
+        {
+            return cancelled.get();
+        }
+
+        /**
+         * @return {@code true} if this timeout has been started by the timer, {@code false} if it's cancelled
+         */
+        private boolean expire()
+        {
+            return cancelled.compareAndSet(false, true);
+        }
+    }
+
+    private static final class Holder
+    {
+        static final SharedScheduler INSTANCE = new SharedScheduler();
+    }
+
+    /**
+     * @return shared instance
+     */
+    static SharedScheduler getInstance()
+    {
+        return Holder.INSTANCE;
+    }
+
+    private final ExecutorService worker;
+
+    /**
+     * number of worker threads reserved by all writers, guarded by this scheduler
+     */
+    private int reservedWorkers;
+
+    /**
+     * new timeouts, moved into the wheel by the timer thread
+     */
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+
+    /**
+     * buckets of the wheel, only accessed by the timer thread
+     */
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Timeout>[] wheel = new ArrayDeque[WHEEL_SIZE];
+
+    /**
+     * number of scheduled timeouts which are neither expired nor cancelled
+     */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile Thread timerThread;
+
+    /**
+     * time of tick 0 in nanoseconds
+     */
+    private long startTime;
+    private long tick;
+
+    private SharedScheduler()
+    {
+        for (int i = 0; i < WHEEL_SIZE; i++)
+        {
+            wheel[i] = new ArrayDeque<>();
+        }
+
+        worker = WorkerThreads.create();
+    }
+
+    /**
+     * @return executor of shared worker threads
+     */
+    Executor worker()
+    {
+        return worker;
+    }
+
+    /**
+     * Reserves worker threads for the tasks of a writer, which may block at the same time. Platform worker threads are
+     * limited to the sum of all reservations, at least one. Virtual worker threads are not limited.
+     *
+     * @param threads number of threads
+     */
+    synchronized void reserveWorkers(final int threads)
+    {
+        resizeWorkers(reservedWorkers + threads);
+    }
+
+    /**
+     * Releases worker threads reserved by {@link #reserveWorkers(int)}.
+     *
+     * @param threads number of threads
+     */
+    synchronized void releaseWorkers(final int threads)
+    {
+        resizeWorkers(reservedWorkers - threads);
+    }
+
+    private void resizeWorkers(final int threads)
+    {
+        reservedWorkers = threads;
+        if (worker instanceof ThreadPoolExecutor)
+        {
+            // core size must not exceed maximum size at any time
+            ThreadPoolExecutor pool = (ThreadPoolExecutor) worker;
+            int size = Math.max(threads, 1);
+            if (size > pool.getMaximumPoolSize())
+            {
+                pool.setMaximumPoolSize(size);
+                pool.setCorePoolSize(size);
+            }
+            else
+            {
+                pool.setCorePoolSize(size);
+                pool.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    /**
+     * Schedules a task, which runs on a worker thread after the delay has passed.
+     *
+     * @param task task to run
+     * @param delay delay
+     * @param unit unit of delay
+     * @return timeout to cancel the task
+     */
+    Timeout schedule(final Runnable task, final long delay, final TimeUnit unit)
+    {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(delay, 0)));
+        added.add(timeout);
+
+        if (pending.getAndIncrement() == 0 || !started.get())
+        {
+            start();
+            LockSupport.unpark(timerThread);
+        }
+        return timeout;
+    }
+
+    private void start()
+    {
+        if (started.compareAndSet(false, true))
+        {
+            Thread thread = new Thread(this::run, "tinylog-writers-timer");
+            thread.setDaemon(true);
+            timerThread = thread;
+            thread.start();
+        }
+
+        while (timerThread == null)
+        {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Advances the wheel once per tick. Runs in {@link #timerThread}.
+     */
+    private void run()
+    {
+        startTime = System.nanoTime();
+        tick = 0;
+
+        while (true)
+        {
+            if (pending.get() == 0)
+            {
+                // nothing scheduled, park until a timeout is added
+                LockSupport.park(this);
+
+                // skip idle ticks, the wheel contains cancelled timeouts only
+                tick = Math.max(tick, (System.nanoTime() - startTime) / TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS));
+                continue;
+            }
+
+            long deadline = startTime + (tick + 1) * TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0)
+            {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+
+            transferAdded();
+            expire(wheel[(int) (tick & (WHEEL_SIZE - 1))]);
+            tick++;
+        }
+    }
+
+    /**
+     * Moves new timeouts into their bucket.
+     */
+    private void transferAdded()
+    {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+        Timeout timeout;
+        while ((timeout = added.poll()) != null)
+        {
+            if (timeout.isDone())
+            {
+                continue;
+            }
+
+            long ticks = Math.max((timeout.deadline - startTime + tickNanos - 1) / tickNanos, tick);
+            timeout.remainingRounds = (ticks - tick) / WHEEL_SIZE;
+            wheel[(int) (ticks & (WHEEL_SIZE - 1))].add(timeout);
+        }
+    }
+
+    /**
+     * Starts all expired timeouts of a bucket on the worker threads.
+     */
+    private void expire(final ArrayDeque<Timeout> bucket)
+    {
+        for (Iterator<Timeout> iterator = bucket.iterator(); iterator.hasNext();)
+        {
+            Timeout timeout = iterator.next();
+            if (timeout.isDone())
+            {
+                iterator.remove();
+            }
+            else if (timeout.remainingRounds > 0)
+            {
+                timeout.remainingRounds--;
+            }
+            else
+            {
+                iterator.remove();
+                if (timeout.expire())
+                {
+                    pending.decrementAndGet();
+                    try
+                    {
+                        worker.execute(timeout.task);
+                    }
+                    catch (RuntimeException e)
+                    {
+                        InternalLogger.log(Level.ERROR, e, "Failed to start scheduled task");
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -1,25 +1,43 @@
 package ch.eswitch.tinylog.writers;
 
+import jakarta.activation.FileDataSource;
 import org.simplejavamail.MailException;
 import org.simplejavamail.api.email.Email;
 import org.simplejavamail.api.email.EmailPopulatingBuilder;
 import org.simplejavamail.api.mailer.Mailer;
 import org.simplejavamail.config.ConfigLoader;
 import org.simplejavamail.email.EmailBuilder;
+import org.simplejavamail.internal.config.EmailProperty;
 import org.simplejavamail.mailer.MailerBuilder;
 import org.tinylog.Level;
 import org.tinylog.core.LogEntry;
+import org.tinylog.core.LogEntryValue;
 import org.tinylog.provider.InternalLogger;
 import org.tinylog.writers.AbstractFormatPatternWriter;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeSet;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * tinylog 2 Email Writer based on Simple Java Mail<br/>
@@ -45,6 +63,198 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
      */
     private static final String PROPERTY_SEND_INTERVAL = "sendinterval";
 
+    /**
+     * send mail immediately, without waiting for {@link #PROPERTY_SEND_INTERVAL}, if a {@link LogEntry} with this or
+     * a higher level is written, e.g. {@code error}
+     */
+    private static final String PROPERTY_SEND_LEVEL = "sendlevel";
+
+    /**
+     * send mail immediately, without waiting for {@link #PROPERTY_SEND_INTERVAL}, if this number of {@link LogEntry}
+     * is buffered
+     */
+    private static final String PROPERTY_SEND_ENTRIES = "sendentries";
+
+    /**
+     * send mail immediately, without waiting for {@link #PROPERTY_SEND_INTERVAL}, if the estimated size in bytes of
+     * buffered {@link LogEntry} reaches this value
+     */
+    private static final String PROPERTY_SEND_BYTES = "sendbytes";
+
+    /**
+     * maximum number of mails sent concurrently, each send uses its own pooled SMTP connection<br/>
+     * the maximum size of the Simple Java Mail connection pool defaults to this value
+     */
+    private static final String PROPERTY_SEND_CONCURRENCY = "sendconcurrency";
+
+    /**
+     * default for {@link #PROPERTY_SEND_CONCURRENCY}
+     */
+    private static final int DEFAULT_SEND_CONCURRENCY = 1;
+
+    /**
+     * delay before a failed mail is sent again, doubled after each consecutive failure<br/>
+     * see {@link java.time.Duration#parse(CharSequence)} for supported values
+     */
+    private static final String PROPERTY_RETRY_DELAY = "retry.delay";
+
+    /**
+     * maximum delay before a failed mail is sent again<br/>
+     * see {@link java.time.Duration#parse(CharSequence)} for supported values
+     */
+    private static final String PROPERTY_RETRY_MAX_DELAY = "retry.maxdelay";
+
+    /**
+     * number of consecutive failures which open the circuit breaker, afterwards only one trial mail is sent after
+     * each delay
+     */
+    private static final String PROPERTY_RETRY_THRESHOLD = "retry.threshold";
+
+    /**
+     * directory of the spool, where accepted {@link LogEntry} are recorded until their mail has been sent<br/>
+     * log entries left over by a crashed JVM are sent on next startup, if property is not set, no spool is used
+     */
+    private static final String PROPERTY_SPOOL = "spool";
+
+    /**
+     * maximum number of {@link LogEntry} buffered for the next mail, further log entries are only counted and
+     * summarized
+     */
+    private static final String PROPERTY_MAX_ENTRIES = "maxentries";
+
+    /**
+     * maximum estimated size in bytes of all {@link LogEntry} buffered for the next mail, further log entries are only
+     * counted and summarized
+     */
+    private static final String PROPERTY_MAX_BYTES = "maxbytes";
+
+    /**
+     * default for {@link #PROPERTY_MAX_ENTRIES}
+     */
+    private static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * default for {@link #PROPERTY_MAX_BYTES}
+     */
+    private static final long DEFAULT_MAX_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * render each {@link LogEntry} when it is written and buffer only the rendered UTF-8 bytes, so the log entry
+     * including exception and context can be released immediately
+     */
+    private static final String PROPERTY_PRERENDER = "prerender";
+
+    /**
+     * aggregate duplicate {@link LogEntry} within one send interval, each distinct log entry is rendered once with
+     * number of occurrences and timestamps of first and last occurrence
+     */
+    private static final String PROPERTY_AGGREGATE = "aggregate";
+
+    /**
+     * maximum number of distinct {@link LogEntry} aggregated within one send interval, further distinct log entries
+     * are only counted and summarized
+     */
+    private static final String PROPERTY_AGGREGATE_MAX_SIZE = PROPERTY_AGGREGATE + ".maxsize";
+
+    /**
+     * default for {@link #PROPERTY_AGGREGATE_MAX_SIZE}
+     */
+    private static final int DEFAULT_AGGREGATE_MAX_SIZE = 1000;
+
+    /**
+     * fold stack traces in mail body: frames of {@link #PROPERTY_STACKTRACE_FOLD_PACKAGES} are folded and repeated
+     * stack traces are rendered as back-reference to the first occurrence
+     */
+    private static final String PROPERTY_STACKTRACE_FOLD = "stacktrace.fold";
+
+    /**
+     * list of package prefixes whose consecutive stack trace frames are folded<br/>
+     * multiple package prefixes can be separated by {@value #TOKEN_DELIMITER}, default is
+     * {@value StackTraceFolder#DEFAULT_PACKAGES}
+     */
+    private static final String PROPERTY_STACKTRACE_FOLD_PACKAGES = PROPERTY_STACKTRACE_FOLD + ".packages";
+
+    /**
+     * number of recent {@link LogEntry} below {@link #PROPERTY_PRECONTEXT_LEVEL} which are recorded and attached to the
+     * next mailed log entry as context<br/>
+     * if property is not set, all log entries are mailed
+     */
+    private static final String PROPERTY_PRECONTEXT_SIZE = "precontext.size";
+
+    /**
+     * minimum level of mailed {@link LogEntry}, log entries below this level are only recorded as context, default is
+     * {@code error}
+     */
+    private static final String PROPERTY_PRECONTEXT_LEVEL = "precontext.level";
+
+    /**
+     * {@code thread} to record context per thread, {@code global} to record context of all threads in one ring, default
+     * is {@code thread}
+     */
+    private static final String PROPERTY_PRECONTEXT_SCOPE = "precontext.scope";
+
+    /**
+     * value of {@link #PROPERTY_PRECONTEXT_SCOPE} to record context of all threads in one ring
+     */
+    private static final String PRECONTEXT_SCOPE_GLOBAL = "global";
+
+    /**
+     * prefix of masking properties, e.g. {@code mask.prefix1}, {@code mask.suffix1}, {@code mask.fixedlength2} and
+     * {@code mask.replacecharacter}, see {@link MaskedWriterUtil}<br/>
+     * log messages are masked when they are rendered for the mail
+     */
+    private static final String PROPERTY_MASK = "mask.";
+
+    /**
+     * maximum length in characters of a mail body, larger bodies are streamed into a gzip compressed attachment and
+     * the mail contains a summary only<br/>
+     * if property is not set, the body is never attached
+     */
+    private static final String PROPERTY_ATTACHMENT_THRESHOLD = "attachment.threshold";
+
+    /**
+     * name of compressed attachment, see {@link #PROPERTY_ATTACHMENT_THRESHOLD}
+     */
+    private static final String ATTACHMENT_NAME = "log";
+
+    /**
+     * prefix of rate limit properties<br/>
+     * {@code ratelimit.<level>=<count>/<duration>} limits log entries of a level, e.g. {@code ratelimit.error=500/PT1H},
+     * further log entries are only counted and summarized
+     */
+    private static final String PROPERTY_RATE_LIMIT = "ratelimit.";
+
+    /**
+     * limit of mails, e.g. {@code 20/PT1H}, further mails are deferred and the send interval is stretched while the
+     * limit is nearly reached
+     */
+    private static final String PROPERTY_RATE_LIMIT_MAILS = PROPERTY_RATE_LIMIT + "mails";
+
+    /**
+     * maximum send interval when it's stretched by {@link #PROPERTY_RATE_LIMIT_MAILS}
+     */
+    private static final String PROPERTY_RATE_LIMIT_MAX_INTERVAL = PROPERTY_RATE_LIMIT + "maxinterval";
+
+    /**
+     * default for {@link #PROPERTY_RATE_LIMIT_MAX_INTERVAL}
+     */
+    private static final Duration DEFAULT_RATE_LIMIT_MAX_INTERVAL = Duration.ofHours(1);
+
+    /**
+     * estimated memory overhead of a byte array
+     */
+    private static final long ESTIMATED_ARRAY_OVERHEAD = 16;
+
+    /**
+     * estimated size of a {@link LogEntry} without message and exception
+     */
+    private static final long ESTIMATED_LOG_ENTRY_SIZE = 256;
+
+    /**
+     * estimated size of an exception including its stack trace
+     */
+    private static final long ESTIMATED_EXCEPTION_SIZE = 8 * 1024;
+
     /**
      * Token delimiter for {@link #PROPERTY_FILTER_INCLUDE} and {@link #PROPERTY_FILTER_EXCLUDE}
      */
@@ -68,17 +278,177 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
     private static final String PROPERTY_FILTER_EXCLUDE = PROPERTY_FILTER + "exclude";
 
     /**
-     * buffered {@link LogEntry} which should be sent in next mail
+     * bit of {@link #PROPERTY_FILTER_INCLUDE} in result of {@link MultiPatternMatcher#match(CharSequence, int)}
+     */
+    private static final int FILTER_INCLUDE = 1;
+
+    /**
+     * bit of {@link #PROPERTY_FILTER_EXCLUDE} in result of {@link MultiPatternMatcher#match(CharSequence, int)}
+     */
+    private static final int FILTER_EXCLUDE = 2;
+
+    /**
+     * writer property prefix for routes, e.g. {@code route.security.tag}<br/>
+     * each route has its own recipients, subject and batch of {@link LogEntry}, a log entry is sent over all matching
+     * routes, or over the default route if no route matches
+     */
+    private static final String PROPERTY_ROUTE = "route.";
+
+    /**
+     * minimum level of route, e.g. {@code route.security.level=warn}
+     */
+    private static final String ROUTE_LEVEL = "level";
+
+    /**
+     * tags of route, e.g. {@code route.security.tag=security;audit}
+     */
+    private static final String ROUTE_TAG = "tag";
+
+    /**
+     * class name prefixes of route, e.g. {@code route.payment.class=com.example.payment}
+     */
+    private static final String ROUTE_CLASS = "class";
+
+    /**
+     * recipients of route separated by comma or semicolon, e.g. {@code route.security.to=security@example.com}
+     */
+    private static final String ROUTE_TO = "to";
+
+    /**
+     * subject of route, e.g. {@code route.security.subject=Security alert}
+     */
+    private static final String ROUTE_SUBJECT = "subject";
+
+    /**
+     * register {@link SimpleMailWriterMXBean} of this writer, default is {@code false}
+     */
+    private static final String PROPERTY_JMX = "jmx";
+
+    /**
+     * name of {@link SimpleMailWriterMXBean}, default is {@code simplemail-<number>}
      */
-    private final ArrayList<LogEntry> bufferedLogEntries = new ArrayList<>();
+    private static final String PROPERTY_JMX_NAME = PROPERTY_JMX + ".name";
 
     /**
-     * timestamp to indicate when next mail can be sent
+     * number of created writers, for default {@link #PROPERTY_JMX_NAME}
      */
-    private Instant nextMessage = null;
+    private static final AtomicInteger WRITER_NUMBER = new AtomicInteger();
+
+    /**
+     * log diagnostic DEBUG and TRACE messages of this writer with {@link InternalLogger}<br/>
+     * if property is not set, no diagnostic messages are created, so rejected {@link LogEntry} and sending mails cost
+     * no formatting
+     */
+    private static final String PROPERTY_DEBUG = "debug";
+
+    /**
+     * test the SMTP connection synchronously while the writer is created and fail if it's not available<br/>
+     * if property is not set, the connection is tested in background and {@link LogEntry} are buffered until the
+     * test has finished
+     */
+    private static final String PROPERTY_STRICT = "strict";
+
+    /**
+     * value of {@link #PROPERTY_PRERENDER}
+     */
+    private boolean prerender = false;
+
+    /**
+     * maximum number of distinct aggregated {@link LogEntry} per route, 0 if {@link #PROPERTY_AGGREGATE} is disabled
+     */
+    private int aggregateMaxSize;
+
+    /**
+     * renders LogEntries with folded stack traces, if {@link #PROPERTY_STACKTRACE_FOLD} is enabled and the format
+     * pattern renders exceptions, otherwise {@code null}
+     */
+    private FoldedFormatPattern foldedPattern;
+
+    /**
+     * value of {@link #PROPERTY_PRECONTEXT_LEVEL}, {@code null} if {@link #PROPERTY_PRECONTEXT_SIZE} is not set
+     */
+    private Level precontextLevel;
+
+    /**
+     * ring of recent {@link LogEntry} of all threads, if {@link #PROPERTY_PRECONTEXT_SCOPE} is {@code global}
+     */
+    private ContextRing globalContext;
+
+    /**
+     * ring of recent {@link LogEntry} of current thread, if {@link #PROPERTY_PRECONTEXT_SCOPE} is {@code thread}
+     */
+    private ThreadLocal<ContextRing> threadContext;
+
+    /**
+     * masks log messages, see {@link #PROPERTY_MASK}
+     */
+    private final MaskedWriterUtil masking;
+
+    /**
+     * value of {@link #PROPERTY_ATTACHMENT_THRESHOLD}, 0 if not set
+     */
+    private long attachmentThreshold;
+
+    /**
+     * rate limits, {@code null} if no {@link #PROPERTY_RATE_LIMIT} property is set
+     */
+    private MailRateLimiter rateLimiter;
+
+    /**
+     * metrics, published as {@link SimpleMailWriterMXBean}
+     */
+    private final MailWriterMetrics metrics;
+
+    /**
+     * value of {@link #PROPERTY_MAX_ENTRIES}
+     */
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    /**
+     * value of {@link #PROPERTY_MAX_BYTES}
+     */
+    private long maxBytes = DEFAULT_MAX_BYTES;
 
     private Mailer mailer;
-    private EmailPopulatingBuilder emailBuilder;
+
+    /**
+     * delays sending after failures
+     */
+    private final SendCircuitBreaker circuitBreaker;
+
+    /**
+     * default route, for all {@link LogEntry} not matching any route of {@link #routes}, with default recipients and
+     * subject of Simple Java Mail
+     */
+    private MailRoute defaultRoute;
+
+    /**
+     * configured routes, see {@link #PROPERTY_ROUTE}
+     */
+    private final List<MailRoute> routes = new ArrayList<>();
+
+    /**
+     * {@link #routes} and {@link #defaultRoute}
+     */
+    private final List<MailRoute> allRoutes = new ArrayList<>();
+
+    /**
+     * value of {@link #PROPERTY_SEND_CONCURRENCY}
+     */
+    private int sendConcurrency = DEFAULT_SEND_CONCURRENCY;
+
+    /**
+     * one permit per concurrent send, {@link #sendMail(MailRoute, boolean)} takes the buffered {@link LogEntry} only
+     * if a permit is free, so log entries keep being batched while all senders are busy, and sending is retried as
+     * soon as a sender has finished
+     */
+    private Semaphore sendPermits;
+
+    /**
+     * timer and worker threads shared by all instances, mails are sent on worker threads over pooled SMTP connections,
+     * each writer reserves one worker thread per concurrent send and one for {@link #dispatch()}
+     */
+    private final SharedScheduler scheduler = SharedScheduler.getInstance();
 
     /**
      * Duration of {@link SimpleMailWriter#PROPERTY_SEND_INTERVAL}
@@ -86,24 +456,57 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
     private Duration sendInterval = null;
 
     /**
-     * {@link ScheduledExecutorService} to create schedule next mail after interval time
+     * value of {@link #PROPERTY_SEND_LEVEL}, {@code null} if not set
+     */
+    private Level sendLevel;
+
+    /**
+     * value of {@link #PROPERTY_SEND_ENTRIES}, 0 if not set
+     */
+    private int sendEntries;
+
+    /**
+     * value of {@link #PROPERTY_SEND_BYTES}, 0 if not set
+     */
+    private long sendBytes;
+
+    /**
+     * number of wakeups since {@link #processBufferedLogEntries()} has been started on a worker thread, so it never
+     * runs concurrently and any number of written {@link LogEntry} result in one pending run
      */
-    private ScheduledExecutorService scheduledExecutorService;
+    private final AtomicInteger wakeUps = new AtomicInteger();
 
     /**
-     * next scheduled executor to send next mail
+     * {@code true} if {@link #flush()} has been called, buffered {@link LogEntry} of all routes are sent by the next run
+     * of {@link #processBufferedLogEntries()}
      */
-    private ScheduledFuture<?> scheduledExecutor;
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
 
     /**
-     * cached thread pool to process {@link LogEntry}
+     * {@code true} as soon as {@link #close()} is called, afterwards buffered {@link LogEntry} are sent by
+     * {@link #close()} only
      */
-    private final ExecutorService cachedThreadPool = Executors.newCachedThreadPool();
+    private volatile boolean closed;
 
     private ArrayList<String> includeFilter;
 
     private ArrayList<String> excludeFilter;
 
+    /**
+     * compiled {@link #includeFilter} and {@link #excludeFilter}, {@code null} if no filter is defined
+     */
+    private MultiPatternMatcher filterMatcher;
+
+    /**
+     * value of {@link #PROPERTY_DEBUG}
+     */
+    private final boolean debug;
+
+    /**
+     * completed as soon as the SMTP connection test has finished, mails are sent only afterwards
+     */
+    private CompletableFuture<Void> mailerReady;
+
     /**
      * @param properties Configuration for writer
      */
@@ -113,6 +516,56 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
 
         InternalLogger.log(Level.INFO, "SimpleMailWriter.<init>");
 
+        debug = Boolean.parseBoolean(properties.getOrDefault(PROPERTY_DEBUG, "false").trim());
+
+        circuitBreaker = new SendCircuitBreaker(parseDuration(properties.get(PROPERTY_RETRY_DELAY), SendCircuitBreaker.DEFAULT_DELAY), parseDuration(properties.get(
+                PROPERTY_RETRY_MAX_DELAY), SendCircuitBreaker.DEFAULT_MAX_DELAY), Integer.parseInt(properties.getOrDefault(PROPERTY_RETRY_THRESHOLD, String.valueOf(
+                        SendCircuitBreaker.DEFAULT_THRESHOLD)).trim()));
+
+        if (Boolean.parseBoolean(properties.getOrDefault(PROPERTY_AGGREGATE, "false").trim()))
+        {
+            String maxSize = properties.get(PROPERTY_AGGREGATE_MAX_SIZE);
+            aggregateMaxSize = maxSize == null ? DEFAULT_AGGREGATE_MAX_SIZE : Integer.parseInt(maxSize.trim());
+            InternalLogger.log(Level.TRACE, "set '" + PROPERTY_AGGREGATE + "': true");
+        }
+
+        if (Boolean.parseBoolean(properties.getOrDefault(PROPERTY_STACKTRACE_FOLD, "false").trim()))
+        {
+            ArrayList<String> packages = new ArrayList<>();
+            StringTokenizer t = new StringTokenizer(properties.getOrDefault(PROPERTY_STACKTRACE_FOLD_PACKAGES, StackTraceFolder.DEFAULT_PACKAGES), TOKEN_DELIMITER);
+            while (t.hasMoreTokens())
+            {
+                String s = t.nextToken().trim();
+                if (s.length() > 0)
+                {
+                    packages.add(s);
+                }
+            }
+            // same format pattern and throwable filters as tinylog's rendering
+            foldedPattern = FoldedFormatPattern.parse(properties.get("format"), properties.get("exception"), new StackTraceFolder(packages));
+            InternalLogger.log(Level.TRACE, "set '" + PROPERTY_STACKTRACE_FOLD_PACKAGES + "': " + packages);
+        }
+
+        masking = new MaskedWriterUtil(properties, PROPERTY_MASK);
+
+        String precontextSize = properties.get(PROPERTY_PRECONTEXT_SIZE);
+        if (precontextSize != null && precontextSize.trim().length() > 0)
+        {
+            int size = Integer.parseInt(precontextSize.trim());
+            String level = properties.get(PROPERTY_PRECONTEXT_LEVEL);
+            precontextLevel = level == null ? Level.ERROR : Level.valueOf(level.trim().toUpperCase(Locale.ROOT));
+            if (PRECONTEXT_SCOPE_GLOBAL.equalsIgnoreCase(properties.getOrDefault(PROPERTY_PRECONTEXT_SCOPE, "").trim()))
+            {
+                globalContext = new ContextRing(size);
+            }
+            else
+            {
+                threadContext = ThreadLocal.withInitial(() -> new ContextRing(size));
+            }
+            InternalLogger.log(Level.TRACE, String.format("set '%s': %d, level %s, %s", PROPERTY_PRECONTEXT_SIZE, size, precontextLevel, globalContext != null ? "global"
+                                                                                                                                                    : "per thread"));
+        }
+
         Properties smp = new Properties();
         properties.forEach((key, value) -> {
             if (key.startsWith(PROPERTY_SIMPLEMAIL))
@@ -146,8 +599,6 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
                                                sendInterval.toString(),
                                                sendInterval.getSeconds());
                     InternalLogger.log(Level.TRACE, msg);
-
-                    scheduledExecutorService = Executors.newSingleThreadScheduledExecutor();
                 }
                 catch (Exception e)
                 {
@@ -155,6 +606,46 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
                     throw e;
                 }
             }
+            else if (key.equals(PROPERTY_SEND_LEVEL))
+            {
+                sendLevel = Level.valueOf(value.trim().toUpperCase(Locale.ROOT));
+                InternalLogger.log(Level.TRACE, "set '" + PROPERTY_SEND_LEVEL + "': " + sendLevel);
+            }
+            else if (key.equals(PROPERTY_SEND_ENTRIES))
+            {
+                sendEntries = Integer.parseInt(value.trim());
+                InternalLogger.log(Level.TRACE, "set '" + PROPERTY_SEND_ENTRIES + "': " + sendEntries);
+            }
+            else if (key.equals(PROPERTY_SEND_BYTES))
+            {
+                sendBytes = Long.parseLong(value.trim());
+                InternalLogger.log(Level.TRACE, "set '" + PROPERTY_SEND_BYTES + "': " + sendBytes);
+            }
+            else if (key.equals(PROPERTY_SEND_CONCURRENCY))
+            {
+                sendConcurrency = Math.max(Integer.parseInt(value.trim()), 1);
+                InternalLogger.log(Level.TRACE, "set '" + PROPERTY_SEND_CONCURRENCY + "': " + sendConcurrency);
+            }
+            else if (key.equals(PROPERTY_MAX_ENTRIES))
+            {
+                maxEntries = Integer.parseInt(value.trim());
+                InternalLogger.log(Level.TRACE, "set '" + PROPERTY_MAX_ENTRIES + "': " + maxEntries);
+            }
+            else if (key.equals(PROPERTY_MAX_BYTES))
+            {
+                maxBytes = Long.parseLong(value.trim());
+                InternalLogger.log(Level.TRACE, "set '" + PROPERTY_MAX_BYTES + "': " + maxBytes);
+            }
+            else if (key.equals(PROPERTY_ATTACHMENT_THRESHOLD))
+            {
+                attachmentThreshold = Long.parseLong(value.trim());
+                InternalLogger.log(Level.TRACE, "set '" + PROPERTY_ATTACHMENT_THRESHOLD + "': " + attachmentThreshold);
+            }
+            else if (key.equals(PROPERTY_PRERENDER))
+            {
+                prerender = Boolean.parseBoolean(value.trim());
+                InternalLogger.log(Level.TRACE, "set '" + PROPERTY_PRERENDER + "': " + prerender);
+            }
             else if (key.equals(PROPERTY_FILTER_INCLUDE) || key.equals(PROPERTY_FILTER_EXCLUDE))
             {
                 final boolean isInclude = key.equals(PROPERTY_FILTER_INCLUDE);
@@ -179,7 +670,7 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
                 while (t.hasMoreTokens())
                 {
                     String s = t.nextToken();
-                    s = s.trim().toLowerCase();
+                    s = s.trim();
 
                     if (s.length() > 0)
                     {
@@ -197,265 +688,1125 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
             }
         });
 
-        try
+        if ((includeFilter != null && includeFilter.size() > 0) || (excludeFilter != null && excludeFilter.size() > 0))
         {
-            ConfigLoader.loadProperties(smp, false);
-            mailer = MailerBuilder.buildMailer();
+            // bit positions match FILTER_INCLUDE and FILTER_EXCLUDE
+            filterMatcher = new MultiPatternMatcher(List.of(includeFilter == null ? List.of() : includeFilter, excludeFilter == null ? List.of() : excludeFilter));
+        }
 
-            mailer.testConnection();
+        createRateLimiter(properties);
+        createRoutes(properties);
 
-            emailBuilder = EmailBuilder.startingBlank();
-        }
-        catch (MailException e)
+        metrics = new MailWriterMetrics(allRoutes, circuitBreaker, rateLimiter);
+        if (Boolean.parseBoolean(properties.getOrDefault(PROPERTY_JMX, "false").trim()))
         {
-            InternalLogger.log(Level.ERROR, e);
-            throw e;
+            metrics.register(properties.getOrDefault(PROPERTY_JMX_NAME, "simplemail-" + WRITER_NUMBER.incrementAndGet()).trim());
         }
 
-    }
+        String spoolDirectory = properties.get(PROPERTY_SPOOL);
+        if (spoolDirectory != null && spoolDirectory.trim().length() > 0)
+        {
+            for (MailRoute route : allRoutes)
+            {
+                // default route uses spool directory itself, for compatibility with spools of previous versions
+                Path directory = Paths.get(spoolDirectory.trim());
+                if (route.name != null)
+                {
+                    directory = directory.resolve(route.name);
+                }
+
+                try
+                {
+                    route.spool = new MailSpool(directory);
+                    InternalLogger.log(Level.TRACE, "set '" + PROPERTY_SPOOL + "' of route " + route + ": " + directory);
+                    recoverSpool(route);
+                }
+                catch (IOException e)
+                {
+                    InternalLogger.log(Level.ERROR, e, "Failed to open spool " + directory);
+                }
+            }
+        }
+
+        // reuse SMTP connections, one per concurrent send (requires batch-module)
+        smp.putIfAbsent(ConfigLoader.Property.DEFAULT_CONNECTIONPOOL_MAX_SIZE.key(), String.valueOf(sendConcurrency));
+
+        sendPermits = new Semaphore(sendConcurrency);
+
+        // concurrent senders and the dispatcher (or the SMTP connection test)
+        scheduler.reserveWorkers(sendConcurrency + 1);
+
+        try
+        {
+            ConfigLoader.loadProperties(smp, false);
+            mailer = MailerBuilder.buildMailer();
+
+            if (Boolean.parseBoolean(properties.getOrDefault(PROPERTY_STRICT, "false").trim()))
+            {
+                mailer.testConnection();
+                mailerReady = CompletableFuture.completedFuture(null);
+                wakeUp();
+            }
+            else
+            {
+                // don't block tinylog initialization while connecting to SMTP server
+                mailerReady = CompletableFuture.runAsync(mailer::testConnection, scheduler.worker());
+                mailerReady.whenComplete((result, e) -> {
+                    if (e != null)
+                    {
+                        InternalLogger.log(Level.ERROR, e.getCause() == null ? e : e.getCause(), "SMTP connection test failed");
+                    }
+                    wakeUp();
+                });
+            }
+        }
+        catch (MailException e)
+        {
+            InternalLogger.log(Level.ERROR, e);
+            scheduler.releaseWorkers(sendConcurrency + 1);
+            throw e;
+        }
+
+    }
+
+    /**
+     * create {@link #rateLimiter} if any {@link #PROPERTY_RATE_LIMIT} property is set
+     *
+     * @param properties Configuration for writer
+     */
+    private void createRateLimiter(Map<String, String> properties)
+    {
+        String mailRate = properties.get(PROPERTY_RATE_LIMIT_MAILS);
+        TokenBucket mails = mailRate == null ? null : TokenBucket.parse(mailRate);
+        boolean limited = mails != null;
+
+        TokenBucket[] levels = new TokenBucket[Level.values().length];
+        for (Level level : Level.values())
+        {
+            String levelRate = properties.get(PROPERTY_RATE_LIMIT + level.name().toLowerCase(Locale.ROOT));
+            if (levelRate != null)
+            {
+                levels[level.ordinal()] = TokenBucket.parse(levelRate);
+                limited = true;
+            }
+        }
+
+        if (limited)
+        {
+            Duration maxInterval = parseDuration(properties.get(PROPERTY_RATE_LIMIT_MAX_INTERVAL), DEFAULT_RATE_LIMIT_MAX_INTERVAL);
+            rateLimiter = new MailRateLimiter(mails, levels, sendInterval, maxInterval);
+            InternalLogger.log(Level.TRACE, String.format("set '%s': mails %s, max interval %s", PROPERTY_RATE_LIMIT, mailRate, maxInterval));
+        }
+    }
+
+    /**
+     * @return effective send interval, {@code null} if mails are sent immediately
+     */
+    private Duration currentInterval()
+    {
+        return rateLimiter == null ? sendInterval : rateLimiter.getInterval();
+    }
+
+    /**
+     * create {@link #routes} of all {@link #PROPERTY_ROUTE} properties and {@link #defaultRoute}
+     *
+     * @param properties Configuration for writer
+     */
+    private void createRoutes(Map<String, String> properties)
+    {
+        Set<String> names = new TreeSet<>();
+        for (String key : properties.keySet())
+        {
+            int end = key.lastIndexOf('.');
+            if (key.startsWith(PROPERTY_ROUTE) && end > PROPERTY_ROUTE.length())
+            {
+                names.add(key.substring(PROPERTY_ROUTE.length(), end));
+            }
+        }
+
+        for (String name : names)
+        {
+            String prefix = PROPERTY_ROUTE + name + ".";
+            String level = properties.get(prefix + ROUTE_LEVEL);
+            List<String> tags = tokenize(properties.get(prefix + ROUTE_TAG));
+            List<String> classes = tokenize(properties.get(prefix + ROUTE_CLASS));
+            String to = properties.get(prefix + ROUTE_TO);
+            String subject = properties.get(prefix + ROUTE_SUBJECT);
+
+            MailRoute route = new MailRoute(name, level == null ? null : Level.valueOf(level.trim().toUpperCase(Locale.ROOT)), tags == null ? null : new HashSet<>(tags),
+                                            classes, to == null ? null : to.trim(), subject == null ? null : subject.trim(), createAggregator());
+            routes.add(route);
+            InternalLogger.log(Level.TRACE, String.format("add route '%s': level %s, tags %s, classes %s, to %s, subject %s", name, level, tags, classes, to, subject));
+        }
+
+        defaultRoute = new MailRoute(null, null, null, null, null, null, createAggregator());
+        allRoutes.addAll(routes);
+        allRoutes.add(defaultRoute);
+    }
+
+    /**
+     * @return new aggregator, or {@code null} if {@link #PROPERTY_AGGREGATE} is disabled
+     */
+    private LogEntryAggregator createAggregator()
+    {
+        return aggregateMaxSize > 0 ? new LogEntryAggregator(aggregateMaxSize) : null;
+    }
+
+    /**
+     * @param value values separated by {@value #TOKEN_DELIMITER}, or {@code null}
+     * @return list of trimmed, non-empty values, or {@code null} if value is {@code null}
+     */
+    private static List<String> tokenize(String value)
+    {
+        if (value == null)
+        {
+            return null;
+        }
+
+        List<String> tokens = new ArrayList<>();
+        StringTokenizer t = new StringTokenizer(value, TOKEN_DELIMITER);
+        while (t.hasMoreTokens())
+        {
+            String s = t.nextToken().trim();
+            if (s.length() > 0)
+            {
+                tokens.add(s);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * queue {@link LogEntry} left over in spool of a route by a previous run, they are sent with the first mail
+     *
+     * @param route route with spool
+     * @throws IOException spool can't be read
+     */
+    private void recoverSpool(MailRoute route) throws IOException
+    {
+        List<Path> segments = route.spool.getRecovered();
+        if (segments.isEmpty())
+        {
+            return;
+        }
+
+        StringBuilder recovered = new StringBuilder(String.format("----- log entries recovered from spool, not sent before shutdown -----%n%n"));
+        // buffer of failed mails counts 2 bytes per character, keep room for the note
+        long limit = maxBytes / 2 - 100;
+        for (Path segment : segments)
+        {
+            recovered.append(MailSpool.read(segment));
+            if (recovered.length() > limit)
+            {
+                // oldest log entries are kept, all segments are deleted with the mail
+                recovered.setLength((int) Math.max(0, limit));
+                recovered.append(String.format("%n----- recovered spool truncated, exceeds %,d bytes -----%n", maxBytes));
+                InternalLogger.log(Level.ERROR, String.format("SimpleMailWriter: recovered spool exceeds %d bytes, truncated", maxBytes));
+                break;
+            }
+        }
+
+        InternalLogger.log(Level.WARN, String.format("SimpleMailWriter: %d spool files of route %s recovered", segments.size(), route));
+        if (route.failedMails.add(new MailRoute.FailedMail(recovered.toString(), segments, Collections.emptyList()), 2L * recovered.length(), Integer.MAX_VALUE, maxBytes) == 0)
+        {
+            // would be recovered again on every start
+            InternalLogger.log(Level.ERROR, String.format("SimpleMailWriter: recovered spool exceeds %d bytes, deleted", maxBytes));
+            route.deleteSpool(segments);
+        }
+    }
+
+    /**
+     * @param value duration, see {@link java.time.Duration#parse(CharSequence)}, or {@code null}
+     * @param defaultValue default if value is {@code null}
+     * @return parsed duration
+     */
+    private static Duration parseDuration(String value, Duration defaultValue)
+    {
+        if (value == null)
+        {
+            return defaultValue;
+        }
+
+        // remove comment
+        int posComment = value.indexOf('#');
+        if (posComment > -1)
+        {
+            value = value.substring(0, posComment);
+        }
+        return Duration.parse(value.trim());
+    }
+
+    @Override
+    public Collection<LogEntryValue> getRequiredLogEntryValues()
+    {
+        Collection<LogEntryValue> logEntryValues = super.getRequiredLogEntryValues();
+        if (aggregateMaxSize > 0)
+        {
+            // required for fingerprint and timestamps of aggregated LogEntries
+            logEntryValues.add(LogEntryValue.DATE);
+            logEntryValues.add(LogEntryValue.LEVEL);
+            logEntryValues.add(LogEntryValue.MESSAGE);
+            logEntryValues.add(LogEntryValue.EXCEPTION);
+        }
+        if (sendLevel != null || precontextLevel != null || (rateLimiter != null && rateLimiter.limitsLevels()))
+        {
+            logEntryValues.add(LogEntryValue.LEVEL);
+        }
+        for (MailRoute route : routes)
+        {
+            // required to select route
+            if (route.usesLevel())
+            {
+                logEntryValues.add(LogEntryValue.LEVEL);
+            }
+            if (route.usesTag())
+            {
+                logEntryValues.add(LogEntryValue.TAG);
+            }
+            if (route.usesClass())
+            {
+                logEntryValues.add(LogEntryValue.CLASS);
+            }
+        }
+        return logEntryValues;
+    }
 
     @Override
     public void write(final LogEntry logEntry)
     {
-        InternalLogger.log(Level.TRACE, String.format("%s: write", Instant.now()));
+        if (debug)
+        {
+            InternalLogger.log(Level.TRACE, String.format("%s: write", Instant.now()));
+        }
 
-        // check include filter
-        if (!checkFilter(logEntry, true))
+        ContextRing ring = null;
+        if (precontextLevel != null)
         {
-            InternalLogger.log(Level.DEBUG, String.format("%s: ignore logEntry, %s not matching include filter", Instant.now(), render(logEntry)));
+            ring = globalContext != null ? globalContext : threadContext.get();
+            if (logEntry.getLevel().ordinal() < precontextLevel.ordinal())
+            {
+                // only record as context of next mailed LogEntry, without allocation
+                ring.record(logEntry);
+                return;
+            }
+        }
+
+        // check include and exclude filter
+        int filterResult = checkFilter(logEntry);
+        if ((filterResult & FILTER_EXCLUDE) != 0)
+        {
+            metrics.filtered.increment();
+            if (debug)
+            {
+                InternalLogger.log(Level.DEBUG, String.format("%s: ignore logEntry, %s matching exclude filter", Instant.now(), render(logEntry)));
+            }
+            return;
+        }
+        if (includeFilter != null && includeFilter.size() > 0 && (filterResult & FILTER_INCLUDE) == 0)
+        {
+            metrics.filtered.increment();
+            if (debug)
+            {
+                InternalLogger.log(Level.DEBUG, String.format("%s: ignore logEntry, %s not matching include filter", Instant.now(), render(logEntry)));
+            }
             return;
         }
 
-        // check exclude filter
-        if (checkFilter(logEntry, false))
+        // rate limit of level, suppressed LogEntries are only counted
+        boolean suppressed = rateLimiter != null && !rateLimiter.tryAcquireEntry(logEntry.getLevel(), System.nanoTime());
+        if (!suppressed)
+        {
+            metrics.accepted.increment();
+        }
+
+        // context is taken by accepted LogEntries only, filtered or suppressed LogEntries leave it for the next one
+        List<LogEntry> precontext = ring == null || suppressed ? null : ring.take();
+
+        boolean routed = false;
+        for (MailRoute route : routes)
+        {
+            if (route.matches(logEntry))
+            {
+                add(route, logEntry, precontext, suppressed);
+                routed = true;
+            }
+        }
+        if (!routed)
         {
-            InternalLogger.log(Level.DEBUG, String.format("%s: ignore logEntry, %s matching exclude filter", Instant.now(), render(logEntry)));
+            add(defaultRoute, logEntry, precontext, suppressed);
+        }
+
+        wakeUp();
+    }
+
+    /**
+     * add {@link LogEntry} to the batch of a route
+     *
+     * @param route route
+     * @param logEntry LogEntry
+     * @param precontext recent LogEntries attached as context, or {@code null}
+     * @param suppressed {@code true} if LogEntry is suppressed by rate limit and only counted
+     */
+    private void add(MailRoute route, LogEntry logEntry, List<LogEntry> precontext, boolean suppressed)
+    {
+        if (suppressed)
+        {
+            route.suppressedLogEntries.add(logEntry);
             return;
         }
 
         int size;
-        synchronized (bufferedLogEntries)
+        Object entry = precontext != null && !precontext.isEmpty() ? new MailRoute.ContextEntry(logEntry, precontext) : logEntry;
+        if (route.aggregator != null)
+        {
+            // context of the first LogEntry is rendered with the aggregate, like the LogEntry itself
+            size = route.aggregator.add(logEntry, precontext);
+        }
+        else if (prerender)
+        {
+            byte[] rendered = renderEntry(entry, null).getBytes(StandardCharsets.UTF_8);
+            entry = rendered;
+            size = route.bufferedLogEntries.add(rendered, rendered.length + ESTIMATED_ARRAY_OVERHEAD, maxEntries, maxBytes);
+        }
+        else if (entry != logEntry)
+        {
+            // same batch as LogEntries without context, so the mail keeps the order of writing
+            long bytes = estimateSize(logEntry);
+            for (LogEntry e : precontext)
+            {
+                bytes += estimateSize(e);
+            }
+            size = route.bufferedLogEntries.add(entry, bytes, maxEntries, maxBytes);
+        }
+        else
+        {
+            size = route.bufferedLogEntries.add(logEntry, estimateSize(logEntry), maxEntries, maxBytes);
+        }
+
+        if (size == 0)
+        {
+            // buffer limit reached, only count LogEntry
+            route.droppedLogEntries.add(logEntry);
+            metrics.dropped.increment();
+        }
+        else if (route.spool != null)
+        {
+            // queue after buffering, so a LogEntry is never missing in spool while its mail is pending, and write it
+            // before returning, so an accepted LogEntry survives a crash of the JVM
+            route.unspooled.add(entry);
+            spoolEntries(route);
+        }
+        else if (size > 1 && debug)
         {
-            bufferedLogEntries.add(0, logEntry);
-            size = bufferedLogEntries.size();
+            InternalLogger.log(Level.TRACE, String.format("%s: processEntry: size of bufferedLogEntries of route %s: %d", Instant.now(), route, size));
         }
 
-        if (size > 1)
+        if (sendLevel != null && logEntry.getLevel().ordinal() >= sendLevel.ordinal())
         {
-            InternalLogger.log(Level.TRACE, String.format("%s: processEntry: size of bufferedLogEntries: %d", Instant.now(), size));
+            route.sendLevelReached.set(true);
         }
+    }
 
-        cachedThreadPool.execute(this::processBufferedLogEntries);
+    /**
+     * start {@link #processBufferedLogEntries()} on a worker thread, unless it's already running or pending
+     */
+    private void wakeUp()
+    {
+        if (!closed && wakeUps.getAndIncrement() == 0)
+        {
+            scheduler.worker().execute(this::dispatch);
+        }
     }
 
     /**
+     * run {@link #processBufferedLogEntries()} until no more wakeups are pending
+     */
+    private void dispatch()
+    {
+        int missed = wakeUps.get();
+        do
+        {
+            try
+            {
+                processBufferedLogEntries();
+            }
+            catch (RuntimeException e)
+            {
+                InternalLogger.log(Level.ERROR, e);
+            }
+            missed = wakeUps.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * @param logEntry LogEntry
+     * @return estimated memory size of logEntry in bytes
+     */
+    private static long estimateSize(LogEntry logEntry)
+    {
+        long size = ESTIMATED_LOG_ENTRY_SIZE;
+        if (logEntry.getMessage() != null)
+        {
+            size += 2L * logEntry.getMessage().length();
+        }
+        // limit depth, cause chain can be cyclic
+        Throwable t = logEntry.getException();
+        for (int depth = 0; t != null && depth < 16; depth++)
+        {
+            size += ESTIMATED_EXCEPTION_SIZE;
+            t = t.getCause();
+        }
+        return size;
+    }
+
+    /**
+     * Checks log message, exception class name (including package name) and exception message against
+     * {@link #includeFilter} and {@link #excludeFilter}.
+     *
      * @param logEntry LogEntry
-     * @param include use include or exclude filter
-     * @return true, if text is part of filter
+     * @return bit mask of matched filters ({@link #FILTER_INCLUDE}, {@link #FILTER_EXCLUDE})
+     */
+    private int checkFilter(LogEntry logEntry)
+    {
+        if (filterMatcher == null)
+        {
+            return 0;
+        }
+
+        int result = filterMatcher.match(logEntry.getMessage(), FILTER_EXCLUDE);
+
+        Throwable exception = logEntry.getException();
+        if (exception != null && (result & FILTER_EXCLUDE) == 0)
+        {
+            result |= filterMatcher.match(exception.getClass().getName(), FILTER_EXCLUDE);
+            if ((result & FILTER_EXCLUDE) == 0)
+            {
+                result |= filterMatcher.match(exception.getMessage(), FILTER_EXCLUDE);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * process buffered {@link LogEntry} of all routes and check if mails should be sent or scheduled<br/>
+     * routes without anything to send are skipped, so they neither start their send interval nor cost any lock or
+     * spool rotation
      */
-    private boolean checkFilter(LogEntry logEntry, boolean include)
+    private void processBufferedLogEntries()
     {
-        boolean isFiltered = false;
-        if ((include && includeFilter != null && includeFilter.size() > 0) || (!include && excludeFilter != null && excludeFilter.size() > 0))
+        boolean flush = flushRequested.getAndSet(false);
+        for (MailRoute route : allRoutes)
         {
-            if (checkFilter(logEntry.getMessage(), include))
+            spoolEntries(route);
+            if (route.hasPending())
             {
-                if (!include)
+                processBufferedLogEntries(route, flush);
+            }
+        }
+    }
+
+    /**
+     * process buffered {@link LogEntry} of a route with pending content and check if mail should be sent or
+     * scheduled<br/>
+     * all triggers (send interval, {@link #PROPERTY_SEND_LEVEL}, {@link #PROPERTY_SEND_ENTRIES} and
+     * {@link #PROPERTY_SEND_BYTES}) are checked here only, never concurrently (see {@link #dispatch()}), so they
+     * result in one mail
+     *
+     * @param route route
+     * @param flush {@code true} to send buffered {@link LogEntry} immediately, see {@link #flush()}
+     */
+    private void processBufferedLogEntries(MailRoute route, boolean flush)
+    {
+        Instant now = Instant.now();
+        Instant nextMessage = route.nextMessage;
+        boolean levelReached = route.sendLevelReached.getAndSet(false);
+        boolean sizeReached = (sendEntries > 0 && route.bufferedEntries() >= sendEntries) || (sendBytes > 0 && route.bufferedBytes() >= sendBytes);
+
+        if (currentInterval() == null || nextMessage == null || !now.isBefore(nextMessage) || levelReached || sizeReached || flush)
+        {
+            // no interval, first mail, interval has passed since last mail was sent, triggered or flushed
+            if (debug && (levelReached || sizeReached))
+            {
+                InternalLogger.log(Level.TRACE, String.format("%s: send triggered for route %s, level reached: %b, size reached: %b", now, route, levelReached,
+                                                              sizeReached));
+            }
+            sendMail(route, false);
+        }
+        else if (route.bufferedEntries() > 0)
+        {
+            Duration delay = null;
+            synchronized (route)
+            {
+                if (route.nextMessageTimeout == null || route.nextMessageTimeout.isDone())
                 {
-                    InternalLogger.log(Level.TRACE, String.format("%s: ignore logEntry, '%s' matching exclude filter", Instant.now(), logEntry.getMessage()));
-                    return true;
+                    delay = Duration.between(now, nextMessage);
+                    route.nextMessageTimeout = scheduler.schedule(this::wakeUp, delay.toMillis(), TimeUnit.MILLISECONDS);
                 }
-                isFiltered = true;
             }
 
-            // check Exception
-            if (!isFiltered && logEntry.getException() != null)
+            if (delay != null)
             {
-                // classname, including package name
-                if (checkFilter(logEntry.getException().getClass().getName(), include))
+                if (debug)
                 {
-                    if (!include)
-                    {
-                        InternalLogger.log(Level.TRACE, String.format("%s: ignore logEntry, '%s' matching exclude filter", Instant.now(), logEntry.getException().getClass().getName()));
-                        return true;
-                    }
-                    isFiltered = true;
+                    InternalLogger.log(Level.TRACE, String.format("%s: schedule to send next mail of route %s in %d s", Instant.now(), route, delay.toSeconds()));
                 }
+            }
+        }
+    }
 
-                // Exception message
-                if (!isFiltered && checkFilter(logEntry.getException().getMessage(), include))
+    @Override
+    public void flush()
+    {
+        if (debug)
+        {
+            InternalLogger.log(Level.TRACE, String.format("%s: flush", Instant.now()));
+        }
+
+        // send on the dispatcher, so the caller never waits for a free sender
+        flushRequested.set(true);
+        wakeUp();
+    }
+
+    @Override
+    public void close() throws Exception
+    {
+        if (debug)
+        {
+            InternalLogger.log(Level.TRACE, String.format("%s: close", Instant.now()));
+        }
+        closed = true;
+        for (MailRoute route : allRoutes)
+        {
+            synchronized (route)
+            {
+                if (route.nextMessageTimeout != null)
                 {
-                    if (!include)
-                    {
-                        InternalLogger.log(Level.TRACE, String.format("%s: ignore logEntry, '%s' matching exclude filter", Instant.now(), logEntry.getException().getMessage()));
-                        return true;
-                    }
-                    isFiltered = true;
+                    route.nextMessageTimeout.cancel();
                 }
             }
+        }
+        awaitDispatch();
+        if (debug)
+        {
+            InternalLogger.log(Level.TRACE, String.format("%s: dispatcher finished", Instant.now()));
+        }
+        try
+        {
+            mailerReady.get(30, TimeUnit.SECONDS);
+        }
+        catch (ExecutionException | TimeoutException e)
+        {
+            // already logged, try to send anyway
+        }
+        mailerReady.complete(null);
 
-            if (include && !isFiltered)
+        // last chance to send, even if circuit breaker is open
+        for (MailRoute route : allRoutes)
+        {
+            if (route.hasPending())
             {
-                InternalLogger.log(Level.TRACE, String.format("%s: ignore logEntry, '%s' not matching include filter", Instant.now(), render(logEntry)));
-                return true;
+                sendMail(route, true);
             }
         }
 
-        return isFiltered;
+        // wait until all pending mails are sent
+        if (sendPermits.tryAcquire(sendConcurrency, 30, TimeUnit.SECONDS))
+        {
+            sendPermits.release(sendConcurrency);
+        }
+        if (debug)
+        {
+            InternalLogger.log(Level.TRACE, String.format("%s: senders finished", Instant.now()));
+        }
+        mailer.shutdownConnectionPool();
+
+        for (MailRoute route : allRoutes)
+        {
+            if (route.spool != null)
+            {
+                spoolEntries(route);
+                route.spool.close();
+            }
+
+            // mails not sent anymore, their log entries are only kept in spool
+            for (MailRoute.FailedMail failedMail : route.failedMails.takeAll())
+            {
+                failedMail.attachments.forEach(MailBody::delete);
+            }
+        }
+
+        metrics.unregister();
+        scheduler.releaseWorkers(sendConcurrency + 1);
     }
 
     /**
-     * @param text text to be checked
-     * @param include use include or exclude filter
-     * @return true, if text is part of filter
+     * wait up to 30 seconds until {@link #dispatch()} has finished
+     *
+     * @throws InterruptedException interrupted while waiting
      */
-    private boolean checkFilter(String text, boolean include)
+    private void awaitDispatch() throws InterruptedException
     {
-        if (text == null || text.length() == 0)
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (wakeUps.get() != 0 && System.nanoTime() - end < 0)
         {
-            return false;
+            Thread.sleep(10);
         }
+    }
 
-        text = text.toLowerCase();
+    /**
+     * append LogEntries written since last call to the spool of a route, all in one record<br/>
+     * called by each logging thread after queuing its LogEntry, concurrent logging threads waiting for the lock find
+     * their LogEntries already written by the previous one, so they are appended together<br/>
+     * also called before taking a mail, so the segment of the mail contains all of its LogEntries
+     *
+     * @param route route
+     */
+    private void spoolEntries(MailRoute route)
+    {
+        if (route.spool == null)
+        {
+            return;
+        }
 
-        ArrayList<String> filter;
-        if (include)
+        synchronized (route.takeLock)
         {
-            filter = includeFilter;
+            List<Object> entries = route.unspooled.takeAll();
+            if (entries.isEmpty())
+            {
+                return;
+            }
+
+            // oldest first, as written
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            for (int i = entries.size() - 1; i >= 0; i--)
+            {
+                Object e = entries.get(i);
+                byte[] bytes = e instanceof byte[] ? (byte[]) e : renderEntry(e, null).getBytes(StandardCharsets.UTF_8);
+                data.write(bytes, 0, bytes.length);
+            }
+
+            try
+            {
+                route.spool.append(data.toByteArray());
+            }
+            catch (IOException e)
+            {
+                InternalLogger.log(Level.ERROR, e, "Failed to write to spool");
+            }
         }
-        else
+    }
+
+    /**
+     * @param entry buffered {@link LogEntry} or {@link MailRoute.ContextEntry}
+     * @param renderedStacks stack traces already rendered in current mail, or {@code null} to disable
+     *            back-references
+     * @return rendered entry
+     */
+    private String renderEntry(Object entry, Map<StackTraceFolder.Fingerprint, Integer> renderedStacks)
+    {
+        if (entry instanceof MailRoute.ContextEntry)
         {
-            filter = excludeFilter;
+            MailRoute.ContextEntry contextEntry = (MailRoute.ContextEntry) entry;
+            return renderWithPrecontext(contextEntry.logEntry, contextEntry.precontext, renderedStacks);
         }
+        return renderLogEntry((LogEntry) entry, renderedStacks);
+    }
 
-        if (filter.stream()
-                .anyMatch(text::contains))
+    /**
+     * @param logEntry LogEntry to render
+     * @param precontext recent LogEntries rendered after logEntry, oldest first, or {@code null}
+     * @param renderedStacks stack traces already rendered in current mail, or {@code null} to disable
+     *            back-references
+     * @return rendered logEntry with context
+     */
+    private String renderWithPrecontext(LogEntry logEntry, List<LogEntry> precontext, Map<StackTraceFolder.Fingerprint, Integer> renderedStacks)
+    {
+        if (precontext == null || precontext.isEmpty())
         {
-            return true;
+            return renderLogEntry(logEntry, renderedStacks);
         }
 
-        return false;
+        StringBuilder builder = new StringBuilder(renderLogEntry(logEntry, renderedStacks));
+        builder.append(String.format("----- %,d log entries before -----%n", precontext.size()));
+        for (LogEntry e : precontext)
+        {
+            builder.append(renderLogEntry(e, renderedStacks));
+        }
+        builder.append(String.format("-----%n"));
+        return builder.toString();
     }
 
     /**
-     * process {@link SimpleMailWriter#bufferedLogEntries} and check if mail should be sent or scheduled
+     * @param logEntry LogEntry to render
+     * @param renderedStacks stack traces already rendered in current mail, or {@code null} to disable
+     *            back-references
+     * @return rendered logEntry with masked message, with folded stack trace if {@link #PROPERTY_STACKTRACE_FOLD} is
+     *         enabled
      */
-    private void processBufferedLogEntries()
+    private String renderLogEntry(LogEntry logEntry, Map<StackTraceFolder.Fingerprint, Integer> renderedStacks)
     {
-        if (sendInterval == null)
+        // mask while rendering, which is on the sending thread unless LogEntry is rendered when written
+        logEntry = masking.mask(logEntry);
+
+        if (foldedPattern == null || logEntry.getException() == null)
         {
-            // always send immediately
-            sendMail();
+            return render(logEntry);
         }
-        else
+        return foldedPattern.render(logEntry, renderedStacks);
+    }
+
+    /**
+     * send one mail with all buffered {@link LogEntry} of a route
+     *
+     * @param route route
+     * @param force {@code true} to send even if {@link #circuitBreaker} delays sending, waits for a free sender
+     */
+    private void sendMail(MailRoute route, boolean force)
+    {
+        if (!mailerReady.isDone())
+        {
+            // keep LogEntries buffered, sent as soon as connection test has finished
+            return;
+        }
+
+        if (!route.hasPending())
         {
-            if (nextMessage == null)
+            // nothing to send, don't take a sender, circuit breaker or mail rate limit token
+            return;
+        }
+
+        if (force)
+        {
+            sendPermits.acquireUninterruptibly();
+        }
+        else if (!sendPermits.tryAcquire())
+        {
+            // never wait for a free sender on the dispatcher, LogEntries are sent after the next sender has finished
+            return;
+        }
+
+        boolean acquired = circuitBreaker.tryAcquire(System.currentTimeMillis());
+        if (!acquired && !force)
+        {
+            // keep LogEntries buffered, sent as soon as retry delay has passed
+            sendPermits.release();
+            return;
+        }
+
+        long rateWait = rateLimiter == null ? 0 : rateLimiter.tryAcquireMail(System.nanoTime());
+        if (rateWait > 0 && !force)
+        {
+            // keep LogEntries buffered, sent as soon as mail rate limit allows
+            sendPermits.release();
+            if (acquired)
             {
-                // send first mail
-                sendMail();
+                circuitBreaker.release();
             }
-            else
+            deferMail(route, rateWait);
+            return;
+        }
+
+        if (debug)
+        {
+            InternalLogger.log(Level.DEBUG, String.format("%s: start sending mail of route %s", Instant.now(), route));
+        }
+
+        boolean submitted = false;
+        try
+        {
+            submitted = takeAndSubmit(route);
+        }
+        finally
+        {
+            if (!submitted)
             {
-                Instant now = Instant.now();
-                if (scheduledExecutor == null && now.isAfter(nextMessage))
+                sendPermits.release();
+                if (acquired)
                 {
-                    // interval has passed since last mail was sent
-                    InternalLogger.log(Level.TRACE, String.format("%s: now is after nextMessage, nextMessage: %s ", now, nextMessage));
-                    sendMail();
+                    circuitBreaker.release();
                 }
-                else
+            }
+            else
+            {
+                // adapt interval to this mail first, so it already applies to the interval started now
+                if (rateLimiter != null)
                 {
-                    Duration delay = null;
-                    synchronized (scheduledExecutorService)
-                    {
-                        if (scheduledExecutor == null)
-                        {
-                            delay = Duration.between(now, nextMessage);
-                            scheduledExecutor = scheduledExecutorService.schedule(() -> sendMail(), delay.toMillis(), TimeUnit.MILLISECONDS);
-                        }
-                    }
-
-                    if (delay != null)
-                    {
-                        InternalLogger.log(Level.TRACE, String.format("%s: schedule to send next mail in %d s", Instant.now(), delay.toSeconds()));
-                    }
-                    else
-                    {
-                        InternalLogger.log(Level.TRACE,
-                                           String.format("%s: scheduledExecutor is scheduled in %d s",
-                                                         Instant.now(),
-                                                         scheduledExecutor.getDelay(TimeUnit.SECONDS)));
-                    }
+                    rateLimiter.onSent(System.nanoTime());
                 }
+                startInterval(route);
             }
         }
     }
 
-    @Override
-    public void flush()
+    /**
+     * start send interval of a route after a mail has been submitted
+     *
+     * @param route route
+     */
+    private void startInterval(MailRoute route)
     {
-        InternalLogger.log(Level.TRACE, String.format("%s: flush", Instant.now()));
-        sendMail();
+        Duration interval = currentInterval();
+        if (interval == null)
+        {
+            return;
+        }
+
+        Instant now = Instant.now();
+        route.nextMessage = now.plus(interval);
+        if (debug)
+        {
+            InternalLogger.log(Level.TRACE, String.format("%s: set nextMessage of route %s: %s", now, route, route.nextMessage));
+        }
+        synchronized (route)
+        {
+            if (route.nextMessageTimeout != null)
+            {
+                route.nextMessageTimeout.cancel();
+            }
+
+            route.nextMessageTimeout = null;
+        }
     }
 
-    @Override
-    public void close() throws Exception
+    /**
+     * schedule next try to send a mail of a route, which is deferred by the mail rate limit
+     *
+     * @param route route
+     * @param nanos nanoseconds until mail rate limit allows next mail
+     */
+    private void deferMail(MailRoute route, long nanos)
     {
-        InternalLogger.log(Level.TRACE, String.format("%s: close", Instant.now()));
-        cachedThreadPool.awaitTermination(30, TimeUnit.SECONDS);
-        InternalLogger.log(Level.TRACE, String.format("%s: cachedThreadPool terminated", Instant.now()));
-        flush();
+        synchronized (route)
+        {
+            if (route.nextMessageTimeout != null && !route.nextMessageTimeout.isDone())
+            {
+                // already scheduled
+                return;
+            }
+            route.nextMessageTimeout = scheduler.schedule(this::wakeUp, nanos, TimeUnit.NANOSECONDS);
+        }
 
-        scheduledExecutorService.shutdown();
+        rateLimiter.onDeferred();
+        if (debug)
+        {
+            InternalLogger.log(Level.DEBUG, String.format("%s: mail of route %s deferred by rate limit for %,d ms", Instant.now(), route, TimeUnit.NANOSECONDS.toMillis(
+                    nanos)));
+        }
     }
 
     /**
-     * send one mail with all {@link LogEntry} in {@link SimpleMailWriter#bufferedLogEntries}
+     * take all buffered {@link LogEntry} of a route, render them and submit the mail to a worker thread
+     *
+     * @param route route
+     * @return {@code true} if a mail has been submitted and its permit is released by the sender
      */
-    private void sendMail()
+    private boolean takeAndSubmit(MailRoute route)
     {
-        InternalLogger.log(Level.DEBUG, String.format("%s: start sending mail", Instant.now()));
-
-        if (sendInterval != null)
+        // take all buffered LogEntries, new LogEntries are buffered for the next mail
+        List<Path> segments = new ArrayList<>();
+        List<Object> logEntries;
+        List<LogEntryAggregator.Aggregate> aggregates;
+        synchronized (route.takeLock)
         {
-            Instant now = Instant.now();
-            nextMessage = now.plus(sendInterval);
-            InternalLogger.log(Level.TRACE, String.format("%s: set nextMessage: %s", now, nextMessage.toString()));
-            synchronized (scheduledExecutorService)
+            if (route.spool != null)
             {
-                if (scheduledExecutor != null && !scheduledExecutor.isDone())
+                // segment of this mail must contain all of its LogEntries
+                spoolEntries(route);
+                try
                 {
-                    scheduledExecutor.cancel(false);
+                    segments.addAll(route.spool.rotate());
                 }
+                catch (IOException e)
+                {
+                    InternalLogger.log(Level.ERROR, e, "Failed to close spool file");
+                }
+            }
+            logEntries = route.bufferedLogEntries.takeAll();
+            aggregates = route.aggregator == null ? Collections.emptyList() : route.aggregator.takeAll();
+        }
+
+        if (debug)
+        {
+            InternalLogger.log(Level.TRACE, String.format("%s: sendMail: size of bufferedLogEntries: %d", Instant.now(), logEntries.size() + aggregates.size()));
+        }
+
+        String droppedSummary = route.droppedLogEntries.takeSummary();
+        String suppressedSummary = route.suppressedLogEntries.takeSummary();
+        List<MailRoute.FailedMail> failed = route.failedMails.takeAll();
+        long discarded = route.discardedMails.getAndSet(0);
+
+        if (logEntries.isEmpty() && aggregates.isEmpty() && droppedSummary == null && suppressedSummary == null && failed.isEmpty()
+                && discarded == 0)
+        {
+            route.deleteSpool(segments);
+            return false;
+        }
+
+        // build mail message body text with all buffered LogEntries, newest LogEntry first
+        StringBuilder header = new StringBuilder();
+        if (droppedSummary != null)
+        {
+            InternalLogger.log(Level.WARN, "SimpleMailWriter buffer limit reached: " + droppedSummary);
+            header.append(droppedSummary).append(System.lineSeparator()).append(System.lineSeparator());
+        }
+        if (suppressedSummary != null)
+        {
+            header.append(suppressedSummary).append(System.lineSeparator()).append(System.lineSeparator());
+        }
+        Duration interval = currentInterval();
+        if (interval != null && !interval.equals(sendInterval))
+        {
+            header.append(String.format("send interval stretched to %s by rate limit, %,d mails deferred%n%n", interval, rateLimiter.getDeferredMails()));
+        }
+        if (discarded > 0)
+        {
+            header.append(String.format("%,d mails could not be sent and are discarded (buffer limit reached)%n%n", discarded));
+        }
 
-                scheduledExecutor = null;
+        // render chunk by chunk, a large body is streamed into a compressed attachment
+        MailBody body = new MailBody(attachmentThreshold);
+        body.append(header.toString());
+        Map<StackTraceFolder.Fingerprint, Integer> renderedStacks = new HashMap<>();
+        for (Object e : logEntries)
+        {
+            if (e instanceof byte[])
+            {
+                body.append((byte[]) e);
+            }
+            else
+            {
+                body.append(renderEntry(e, renderedStacks));
             }
         }
+        for (LogEntryAggregator.Aggregate aggregate : aggregates)
+        {
+            if (aggregate.getCount() > 1)
+            {
+                body.append(String.format("[%,d times, first: %s, last: %s]%n", aggregate.getCount(), aggregate.getFirst(), aggregate.getLast()));
+            }
+            body.append(renderWithPrecontext(aggregate.logEntry, aggregate.precontext, renderedStacks));
+        }
+        List<Path> attachments = new ArrayList<>();
+        for (MailRoute.FailedMail failedMail : failed)
+        {
+            // previous mails which could not be sent, newest first
+            body.append(String.format("%n----- mail sent again after failure -----%n%n")).append(failedMail.text);
+            segments.addAll(failedMail.segments);
+            attachments.addAll(failedMail.attachments);
+        }
+        body.finish();
 
+        int entries = logEntries.size() + aggregates.size();
         String msgText;
-        synchronized (bufferedLogEntries)
+        if (body.isAttachment())
         {
-            InternalLogger.log(Level.TRACE, String.format("%s: sendMail: size of bufferedLogEntries: %d", Instant.now(), bufferedLogEntries.size()));
+            attachments.add(0, body.getAttachment());
+            msgText = header + String.format("%,d log entries (%,d characters) in attachment %s.txt.gz%s%n", entries, body.getLength(), ATTACHMENT_NAME, body
+                    .isIncomplete() ? ", attachment is incomplete" : "");
+        }
+        else
+        {
+            msgText = body.getText();
+        }
 
-            if (bufferedLogEntries.size() == 0)
+        // immutable Email per send, defaults (from, to, subject, ...) are applied from Simple Java Mail properties
+        EmailPopulatingBuilder emailBuilder = EmailBuilder.startingBlank().withPlainText(msgText);
+        if (route.recipients != null)
+        {
+            // recipients of route replace default recipients
+            emailBuilder.to(route.recipients).dontApplyDefaultValueFor(EmailProperty.TO_RECIPIENTS);
+        }
+        if (route.subject != null)
+        {
+            emailBuilder.withSubject(route.subject);
+        }
+        for (int i = 0; i < attachments.size(); i++)
+        {
+            // attachment is streamed from file when mail is sent
+            String name = i == 0 ? ATTACHMENT_NAME + ".txt.gz" : String.format("%s-%d.txt.gz", ATTACHMENT_NAME, i + 1);
+            emailBuilder.withAttachment(name, new FileDataSource(attachments.get(i).toFile()));
+        }
+        Email email = emailBuilder.buildEmail();
+        long bodyLength = body.getLength();
+
+        Runnable send = () -> {
+            try
             {
-                return;
+                WriterEvents.MailSend event = new WriterEvents.MailSend();
+                event.begin();
+                long start = System.nanoTime();
+                boolean delivered = deliver(email);
+                metrics.onSend(delivered, System.nanoTime() - start);
+                if (event.shouldCommit())
+                {
+                    event.route = route.toString();
+                    event.entries = entries;
+                    event.bodyLength = bodyLength;
+                    event.attachments = attachments.size();
+                    event.outcome = delivered ? "sent" : "failed";
+                    event.commit();
+                }
+                if (delivered)
+                {
+                    route.deleteSpool(segments);
+                    attachments.forEach(MailBody::delete);
+                    if (circuitBreaker.onSuccess())
+                    {
+                        InternalLogger.log(Level.INFO, "SimpleMailWriter: mail sent again, circuit breaker closed");
+                    }
+                }
+                else
+                {
+                    retryLater(route, new MailRoute.FailedMail(msgText, segments, attachments));
+                }
             }
+            finally
+            {
+                sendPermits.release();
 
-            // build mail message body text with all buffered LogEntries
-            msgText = bufferedLogEntries.stream()
-                    .map(e -> render(e))
-                    .collect(Collectors.joining());
+                // send LogEntries which have been buffered while all senders were busy
+                wakeUp();
+            }
+        };
 
-            bufferedLogEntries.clear();
-        }
+        scheduler.worker().execute(send);
+        return true;
+    }
 
-        try
+    /**
+     * keep body of failed mail to send it again with the next mail, after the delay of {@link #circuitBreaker}
+     *
+     * @param route route of failed mail
+     * @param failedMail failed mail
+     */
+    private void retryLater(MailRoute route, MailRoute.FailedMail failedMail)
+    {
+        long delay = circuitBreaker.onFailure(System.currentTimeMillis());
+
+        if (route.failedMails.add(failedMail, 2L * failedMail.text.length(), Integer.MAX_VALUE, maxBytes) == 0)
         {
-            emailBuilder.withPlainText(msgText);
+            route.discardedMails.incrementAndGet();
+            route.deleteSpool(failedMail.segments);
+            failedMail.attachments.forEach(MailBody::delete);
+        }
 
-            Email email = emailBuilder.buildEmail();
+        InternalLogger.log(Level.WARN, String.format("SimpleMailWriter: sending mail failed %d times, circuit breaker %s, next try in %,d ms", circuitBreaker
+                .getConsecutiveFailures(), circuitBreaker.getState(), delay));
 
+        scheduler.schedule(this::wakeUp, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * send mail over a pooled SMTP connection
+     *
+     * @param email Email to send
+     * @return {@code true} if mail has been sent, {@code false} if sending failed
+     */
+    private boolean deliver(Email email)
+    {
+        try
+        {
             try
             {
                 mailer.validate(email);
@@ -469,19 +1820,20 @@ public class SimpleMailWriter extends AbstractFormatPatternWriter
 
             String id = email.getId();
 
-            if (id != null && id.length() > 0)
+            if (id == null || id.length() == 0)
             {
-                InternalLogger.log(Level.DEBUG, String.format("%s: mail sent, id: %s", Instant.now(), id));
+                InternalLogger.log(Level.ERROR, String.format("%s: mail id is empty, mail not sent", Instant.now()));
             }
-            else
+            else if (debug)
             {
-                InternalLogger.log(Level.ERROR, String.format("%s: mail id is empty, mail not sent", Instant.now()));
+                InternalLogger.log(Level.DEBUG, String.format("%s: mail sent, id: %s", Instant.now(), id));
             }
+            return true;
         }
         catch (MailException e)
         {
             InternalLogger.log(Level.ERROR, e);
-            throw e;
+            return false;
         }
     }
 
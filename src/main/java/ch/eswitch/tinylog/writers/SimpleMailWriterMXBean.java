@@ -0,0 +1,89 @@
+package ch.eswitch.tinylog.writers;
+
+/**
+ * Management interface of {@link SimpleMailWriter}<br/>
+ * Each writer is registered as {@code ch.eswitch.tinylog.writers:type=SimpleMailWriter,name=<name>}.
+ */
+public interface SimpleMailWriterMXBean
+{
+    /**
+     * @return number of log entries buffered for the next mails of all routes
+     */
+    long getBufferedEntries();
+
+    /**
+     * @return estimated size in bytes of log entries buffered for the next mails of all routes
+     */
+    long getBufferedBytes();
+
+    /**
+     * @return number of log entries accepted for sending
+     */
+    long getAcceptedEntries();
+
+    /**
+     * @return number of log entries rejected by include or exclude filter
+     */
+    long getFilteredEntries();
+
+    /**
+     * @return number of log entries not buffered, because a buffer limit was reached
+     */
+    long getDroppedEntries();
+
+    /**
+     * @return number of log entries suppressed by rate limits
+     */
+    long getSuppressedEntries();
+
+    /**
+     * @return number of sent mails
+     */
+    long getSentMails();
+
+    /**
+     * @return number of failed sends
+     */
+    long getFailedSends();
+
+    /**
+     * @return number of mails deferred by rate limit
+     */
+    long getDeferredMails();
+
+    /**
+     * @return mails sent within the period of the mail rate limit, 0 if mails are not limited
+     */
+    double getMailRate();
+
+    /**
+     * @return time of last sent mail in milliseconds since epoch, 0 if no mail has been sent
+     */
+    long getLastSendTime();
+
+    /**
+     * @return state of circuit breaker: CLOSED, OPEN or HALF_OPEN
+     */
+    String getCircuitBreakerState();
+
+    /**
+     * @return upper bounds in milliseconds of the buckets of {@link #getSendLatencyCounts()}, the last bucket has no
+     *         upper bound
+     */
+    long[] getSendLatencyBoundsMillis();
+
+    /**
+     * @return number of sends by latency bucket, see {@link #getSendLatencyBoundsMillis()}
+     */
+    long[] getSendLatencyCounts();
+
+    /**
+     * @return mean latency of sends in milliseconds
+     */
+    double getSendLatencyMeanMillis();
+
+    /**
+     * @return maximum latency of sends in milliseconds
+     */
+    long getSendLatencyMaxMillis();
+}
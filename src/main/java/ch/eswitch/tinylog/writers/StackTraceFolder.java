@@ -0,0 +1,180 @@
+package ch.eswitch.tinylog.writers;
+
+import org.tinylog.throwable.ThrowableData;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders stack traces for mail bodies<br/>
+ * Consecutive frames of configured packages (e.g. framework and reflection frames) are folded into one line. Each
+ * stack trace is fingerprinted by its frames. If the same stack trace has already been rendered in the same mail, only
+ * the exception and a back-reference to the first occurrence are rendered.<br/>
+ * Stack traces are rendered from {@link ThrowableData} after tinylog's throwable filters, in the same layout as
+ * tinylog's {@code {exception}} token: lines are separated, but not terminated by a line separator.
+ */
+final class StackTraceFolder
+{
+    /**
+     * default packages whose frames are folded
+     */
+    static final String DEFAULT_PACKAGES = "java.lang.reflect.;jdk.internal.;sun.reflect.;org.springframework.;org.apache.catalina.;org.apache.tomcat.;org.eclipse.jetty.;io.netty.;org.junit.";
+
+    /**
+     * maximum number of rendered causes, a cause chain can be cyclic
+     */
+    private static final int MAX_CAUSES = 64;
+
+    /**
+     * Fingerprint of a stack trace, including all causes
+     */
+    static final class Fingerprint
+    {
+        private final List<Object> frames = new ArrayList<>();
+        private final int hash;
+
+        Fingerprint(final ThrowableData throwable)
+        {
+            ThrowableData t = throwable;
+            for (int depth = 0; t != null && depth < MAX_CAUSES; depth++)
+            {
+                frames.add(t.getClassName());
+                frames.addAll(t.getStackTrace());
+                t = t.getCause();
+            }
+            hash = frames.hashCode();
+        }
+
+        @Override
+        public boolean equals(final Object obj)
+        {
+            return obj instanceof Fingerprint && hash == ((Fingerprint) obj).hash && frames.equals(((Fingerprint) obj).frames);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    private final String[] foldedPackages;
+    private final String lineSeparator = System.lineSeparator();
+
+    /**
+     * @param foldedPackages packages whose consecutive frames are folded
+     */
+    StackTraceFolder(final List<String> foldedPackages)
+    {
+        this.foldedPackages = foldedPackages.toArray(new String[0]);
+    }
+
+    /**
+     * Renders the stack trace of a throwable.
+     *
+     * @param builder builder for rendered stack trace
+     * @param throwable filtered throwable to render
+     * @param renderedStacks already rendered stack traces of the current mail with their number, or {@code null} to
+     *            disable back-references
+     */
+    void append(final StringBuilder builder, final ThrowableData throwable, final Map<Fingerprint, Integer> renderedStacks)
+    {
+        appendHeader(builder, throwable);
+        if (renderedStacks != null)
+        {
+            Fingerprint fingerprint = new Fingerprint(throwable);
+            Integer number = renderedStacks.get(fingerprint);
+            if (number != null)
+            {
+                builder.append(" (same stack as #").append(number).append(')');
+                return;
+            }
+
+            number = renderedStacks.size() + 1;
+            renderedStacks.put(fingerprint, number);
+            builder.append(" [stack #").append(number).append(']');
+        }
+
+        List<StackTraceElement> frames = throwable.getStackTrace();
+        appendFrames(builder, frames, 0);
+
+        ThrowableData cause = throwable.getCause();
+        for (int depth = 1; cause != null && depth < MAX_CAUSES; depth++)
+        {
+            // frames in common with the enclosing throwable are omitted
+            List<StackTraceElement> causeFrames = cause.getStackTrace();
+            int m = causeFrames.size() - 1;
+            int n = frames.size() - 1;
+            while (m >= 0 && n >= 0 && causeFrames.get(m).equals(frames.get(n)))
+            {
+                m--;
+                n--;
+            }
+
+            builder.append(lineSeparator).append("Caused by: ");
+            appendHeader(builder, cause);
+            appendFrames(builder, causeFrames.subList(0, m + 1), causeFrames.size() - 1 - m);
+
+            frames = causeFrames;
+            cause = cause.getCause();
+        }
+    }
+
+    private static void appendHeader(final StringBuilder builder, final ThrowableData throwable)
+    {
+        builder.append(throwable.getClassName());
+        if (throwable.getMessage() != null)
+        {
+            builder.append(": ").append(throwable.getMessage());
+        }
+    }
+
+    /**
+     * Renders frames, consecutive frames of {@link #foldedPackages} are folded.
+     */
+    private void appendFrames(final StringBuilder builder, final List<StackTraceElement> frames, final int framesInCommon)
+    {
+        int folded = 0;
+        for (StackTraceElement frame : frames)
+        {
+            if (isFolded(frame))
+            {
+                folded++;
+                continue;
+            }
+
+            appendFolded(builder, folded);
+            folded = 0;
+            builder.append(lineSeparator).append("\tat ").append(frame);
+        }
+        appendFolded(builder, folded);
+
+        if (framesInCommon > 0)
+        {
+            builder.append(lineSeparator).append("\t... ").append(framesInCommon).append(" more");
+        }
+    }
+
+    private void appendFolded(final StringBuilder builder, final int folded)
+    {
+        if (folded > 0)
+        {
+            builder.append(lineSeparator).append("\t... ").append(folded).append(folded == 1 ? " framework frame" : " framework frames").append(" folded");
+        }
+    }
+
+    private boolean isFolded(final StackTraceElement frame)
+    {
+        String className = frame.getClassName();
+        for (String foldedPackage : foldedPackages)
+        {
+            if (className.startsWith(foldedPackage))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,109 @@
+package ch.eswitch.tinylog.writers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket<br/>
+ * Implemented as generic cell rate algorithm: instead of the number of tokens only the theoretical arrival time of the
+ * next token is kept, which is advanced by one emission interval per consumed token. A token is available, if this
+ * time is less than one period ahead of now. So the bucket allows bursts of its capacity and refills continuously.
+ */
+final class TokenBucket
+{
+    private final long capacity;
+    private final long periodNanos;
+
+    /**
+     * nanoseconds between two tokens
+     */
+    private final long emissionInterval;
+
+    /**
+     * theoretical arrival time of next token in nanoseconds
+     */
+    private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * @param capacity number of tokens per period, maximum burst
+     * @param period period in which the bucket refills completely
+     */
+    TokenBucket(final long capacity, final Duration period)
+    {
+        if (capacity <= 0 || period.isNegative() || period.isZero())
+        {
+            throw new IllegalArgumentException("invalid rate: " + capacity + "/" + period);
+        }
+
+        this.capacity = capacity;
+        this.periodNanos = period.toNanos();
+        this.emissionInterval = Math.max(periodNanos / capacity, 1);
+    }
+
+    /**
+     * @param rate rate like {@code 20/PT1H}
+     * @return token bucket for rate
+     */
+    static TokenBucket parse(final String rate)
+    {
+        int separator = rate.indexOf('/');
+        if (separator < 0)
+        {
+            throw new IllegalArgumentException("rate must be <count>/<duration>: " + rate);
+        }
+        return new TokenBucket(Long.parseLong(rate.substring(0, separator).trim()), Duration.parse(rate.substring(separator + 1).trim()));
+    }
+
+    /**
+     * @param now current time from {@link System#nanoTime()}
+     * @return {@code true} if a token has been consumed
+     */
+    boolean tryConsume(final long now)
+    {
+        while (true)
+        {
+            long current = arrival.get();
+            long next = start(current, now) + emissionInterval;
+            if (next - now > periodNanos)
+            {
+                return false;
+            }
+            if (arrival.compareAndSet(current, next))
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param now current time from {@link System#nanoTime()}
+     * @return nanoseconds until a token is available, 0 if a token is available now
+     */
+    long nanosUntilToken(final long now)
+    {
+        return Math.max(start(arrival.get(), now) + emissionInterval - periodNanos - now, 0);
+    }
+
+    /**
+     * @param now current time from {@link System#nanoTime()}
+     * @return number of tokens consumed within the last period, i.e. the current rate per period
+     */
+    double getUsed(final long now)
+    {
+        return (double) (start(arrival.get(), now) - now) / emissionInterval;
+    }
+
+    /**
+     * @return number of tokens per period
+     */
+    long getCapacity()
+    {
+        return capacity;
+    }
+
+    private static long start(final long arrival, final long now)
+    {
+        return arrival == Long.MIN_VALUE || arrival - now < 0 ? now : arrival;
+    }
+
+}
@@ -0,0 +1,51 @@
+package ch.eswitch.tinylog.writers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the worker threads of {@link SharedScheduler}<br/>
+ * This is the Java 11 implementation with platform threads. On Java 21 and later the implementation in
+ * {@code src/main/java21} is loaded from the multi-release JAR, which can run the workers on virtual threads.
+ */
+final class WorkerThreads
+{
+    /**
+     * idle platform worker threads are terminated after this time
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private WorkerThreads()
+    {
+    }
+
+    /**
+     * @return executor of platform worker threads, with one thread until it's resized by
+     *         {@link SharedScheduler#reserveWorkers(int)}
+     */
+    static ExecutorService create()
+    {
+        return platform(1);
+    }
+
+    /**
+     * @param threads maximum number of threads
+     * @return new executor with a fixed maximum number of platform threads, further tasks are queued, idle threads are
+     *         terminated
+     */
+    static ThreadPoolExecutor platform(final int threads)
+    {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "tinylog-writers-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
@@ -0,0 +1,111 @@
+package ch.eswitch.tinylog.writers;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events of the writers<br/>
+ * All events are disabled by default and must be enabled in the settings (<code>.jfc</code> file) of the
+ * recording. While an event is disabled, it's never committed and the JIT removes its allocation.
+ */
+final class WriterEvents
+{
+    /**
+     * category of all events
+     */
+    static final String CATEGORY = "tinylog";
+
+    private WriterEvents()
+    {
+    }
+
+    /**
+     * masking of a log message by {@link MaskedWriterUtil}, only recorded if it takes longer than the threshold
+     */
+    @Name("ch.eswitch.tinylog.writers.Mask")
+    @Label("Mask Log Message")
+    @Category({CATEGORY, "Masking"})
+    @Description("Masking of a log message which took longer than the threshold")
+    @Enabled(false)
+    @Threshold("1 ms")
+    static final class Mask extends Event
+    {
+        @Label("Message Length")
+        int messageLength;
+
+        @Label("Filters")
+        @Description("Number of configured filters")
+        int filters;
+
+        @Label("Rule Hits")
+        @Description("Number of masked parts of the log message")
+        int ruleHits;
+    }
+
+    /**
+     * rollover of {@link MaskedRollingFileWriter} to a new log file
+     */
+    @Name("ch.eswitch.tinylog.writers.Rollover")
+    @Label("Log File Rollover")
+    @Category({CATEGORY, "File"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Rollover extends Event
+    {
+        @Label("File Name")
+        @Description("New log file")
+        String fileName;
+    }
+
+    /**
+     * deletion of old log files by {@link MaskedRollingFileWriter}
+     */
+    @Name("ch.eswitch.tinylog.writers.BackupDeletion")
+    @Label("Log File Backup Deletion")
+    @Category({CATEGORY, "File"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class BackupDeletion extends Event
+    {
+        @Label("Deleted Files")
+        int deletedFiles;
+
+        @Label("Kept Files")
+        int keptFiles;
+    }
+
+    /**
+     * sending of a mail with a batch of log entries by {@link SimpleMailWriter}
+     */
+    @Name("ch.eswitch.tinylog.writers.MailSend")
+    @Label("Send Log Mail")
+    @Category({CATEGORY, "Mail"})
+    @Enabled(false)
+    @StackTrace(false)
+    static final class MailSend extends Event
+    {
+        @Label("Route")
+        String route;
+
+        @Label("Log Entries")
+        int entries;
+
+        @Label("Body Length")
+        @Description("Approximate length of the mail body in characters, including mails sent again after failure")
+        long bodyLength;
+
+        @Label("Attachments")
+        int attachments;
+
+        @Label("Outcome")
+        @Description("sent or failed")
+        String outcome;
+    }
+
+}
@@ -0,0 +1,66 @@
+package ch.eswitch.tinylog.writers;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the worker threads of {@link SharedScheduler}<br/>
+ * This is the Java 21 implementation of the multi-release JAR: workers can be virtual threads, so blocking SMTP I/O of
+ * sends and retries doesn't hold platform threads. Virtual threads are opt-in: Jakarta Mail blocks inside synchronized
+ * methods, which pins the carrier thread before Java 24 (JEP 491), {@code SendBenchmark} takes about 50 times longer
+ * than with platform threads on Java 21. And the sends of a writer are limited by {@code sendconcurrency} (default 1)
+ * anyway, so virtual threads only save platform threads of writers with a high {@code sendconcurrency}.
+ */
+final class WorkerThreads
+{
+    /**
+     * system property to enable virtual threads, e.g. {@code -Dtinylog.simplemail.virtualthreads=true}, default is
+     * {@code false}
+     */
+    static final String PROPERTY_VIRTUAL_THREADS = "tinylog.simplemail.virtualthreads";
+
+    /**
+     * idle platform worker threads are terminated after this time
+     */
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private WorkerThreads()
+    {
+    }
+
+    /**
+     * @return executor of worker threads, configured by {@link #PROPERTY_VIRTUAL_THREADS}: one virtual thread per task,
+     *         or platform threads with one thread until it's resized by {@link SharedScheduler#reserveWorkers(int)}
+     */
+    static ExecutorService create()
+    {
+        if (Boolean.parseBoolean(System.getProperty(PROPERTY_VIRTUAL_THREADS, "false").trim()))
+        {
+            // one new virtual thread per task, virtual threads are always daemon threads
+            return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tinylog-writers-worker-", 1).factory());
+        }
+        return platform(1);
+    }
+
+    /**
+     * @param threads maximum number of threads
+     * @return new executor with a fixed maximum number of platform threads, further tasks are queued, idle threads are
+     *         terminated
+     */
+    static ThreadPoolExecutor platform(final int threads)
+    {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "tinylog-writers-worker-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
@@ -0,0 +1,244 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class AsyncConsoleOutputTest
+{
+    private final Console console = new Console();
+    private ConsoleChannelOutput channelOutput;
+
+    @Test
+    void orderTest() throws InterruptedException
+    {
+        console.release();
+        AsyncConsoleOutput output = newOutput(1000, AsyncConsoleOutput.OverflowPolicy.DROP_LOWEST, Duration.ofHours(1));
+
+        StringBuilder expected = new StringBuilder();
+        Level[] levels = {Level.DEBUG, Level.ERROR, Level.INFO, Level.WARN, Level.TRACE};
+        for (int i = 0; i < 500; i++)
+        {
+            Level level = levels[i % levels.length];
+            boolean toErr = level.ordinal() >= Level.WARN.ordinal();
+            output.write(level, toErr, level + " " + i + "\n");
+            expected.append(toErr ? "err: " : "out: ").append(level).append(' ').append(i).append('\n');
+        }
+        close(output);
+
+        // chronological across levels and across stdout and stderr
+        Assertions.assertEquals(expected.toString(), console.lines());
+    }
+
+    @Test
+    void closeTest() throws InterruptedException
+    {
+        console.release();
+        AsyncConsoleOutput output = newOutput(100_000, AsyncConsoleOutput.OverflowPolicy.DROP_NEWEST, Duration.ofHours(1));
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 50_000; i++)
+        {
+            output.write(Level.INFO, false, "entry " + i + "\n");
+            expected.append("out: entry ").append(i).append('\n');
+        }
+
+        // all queued log entries are written before close returns
+        close(output);
+        Assertions.assertEquals(expected.toString(), console.lines());
+    }
+
+    @Test
+    void dropLowestTest() throws InterruptedException
+    {
+        AsyncConsoleOutput output = stalledOutput(AsyncConsoleOutput.OverflowPolicy.DROP_LOWEST);
+
+        output.write(Level.DEBUG, false, "debug 1\n");
+        output.write(Level.INFO, false, "info 2\n");
+        output.write(Level.INFO, false, "info 3\n");
+        output.write(Level.DEBUG, false, "debug 4\n");
+
+        // oldest log entry with the lowest level is dropped
+        output.write(Level.WARN, true, "warn 5\n");
+        output.write(Level.DEBUG, false, "debug 6\n");
+        // no log entry with the same or a lower level, new log entry is dropped
+        output.write(Level.TRACE, false, "trace 7\n");
+
+        console.release();
+        close(output);
+
+        String lines = console.lines();
+        Assertions.assertTrue(lines.startsWith("out: stall\nout: info 2\nout: info 3\nerr: warn 5\nout: debug 6\nerr: "), lines);
+        Assertions.assertTrue(lines.contains("dropped 3 log entries (TRACE: 1, DEBUG: 2)"), lines);
+    }
+
+    @Test
+    void dropNewestTest() throws InterruptedException
+    {
+        AsyncConsoleOutput output = stalledOutput(AsyncConsoleOutput.OverflowPolicy.DROP_NEWEST);
+
+        for (int i = 1; i <= 4; i++)
+        {
+            output.write(Level.DEBUG, false, "debug " + i + "\n");
+        }
+        output.write(Level.ERROR, true, "error 5\n");
+        output.write(Level.INFO, false, "info 6\n");
+
+        console.release();
+        close(output);
+
+        String lines = console.lines();
+        Assertions.assertTrue(lines.startsWith("out: stall\nout: debug 1\nout: debug 2\nout: debug 3\nout: debug 4\nerr: "), lines);
+        Assertions.assertTrue(lines.contains("dropped 2 log entries (INFO: 1, ERROR: 1)"), lines);
+    }
+
+    @Test
+    void blockTest() throws InterruptedException
+    {
+        AsyncConsoleOutput output = stalledOutput(AsyncConsoleOutput.OverflowPolicy.BLOCK);
+
+        for (int i = 1; i <= 4; i++)
+        {
+            output.write(Level.DEBUG, false, "debug " + i + "\n");
+        }
+        Thread logging = new Thread(() -> output.write(Level.ERROR, true, "error 5\n"));
+        logging.start();
+
+        // logging thread waits for space in the queue
+        logging.join(500);
+        Assertions.assertTrue(logging.isAlive());
+
+        console.release();
+        logging.join(5000);
+        Assertions.assertFalse(logging.isAlive());
+        close(output);
+
+        Assertions.assertEquals("out: stall\nout: debug 1\nout: debug 2\nout: debug 3\nout: debug 4\nerr: error 5\n", console.lines());
+    }
+
+    @Test
+    void summaryIntervalTest() throws InterruptedException
+    {
+        AsyncConsoleOutput output = newOutput(1, AsyncConsoleOutput.OverflowPolicy.DROP_NEWEST, Duration.ofSeconds(1));
+        output.write(Level.INFO, false, "stall\n");
+        Assertions.assertTrue(console.awaitStall());
+
+        output.write(Level.INFO, false, "info 1\n");
+        output.write(Level.INFO, false, "info 2\n");
+        console.release();
+
+        // summary is written periodically, not only on close
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!console.lines().contains("dropped") && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assertions.assertTrue(console.lines().contains("err: "), console.lines());
+        Assertions.assertTrue(console.lines().contains("dropped 1 log entries (INFO: 1)"), console.lines());
+
+        close(output);
+        Assertions.assertEquals(1, console.lines().split("dropped", -1).length - 1, console.lines());
+    }
+
+    /**
+     * @return output with a queue of capacity 4, whose console stalls while writing the first log entry
+     */
+    private AsyncConsoleOutput stalledOutput(AsyncConsoleOutput.OverflowPolicy policy) throws InterruptedException
+    {
+        AsyncConsoleOutput output = newOutput(4, policy, Duration.ofHours(1));
+        output.write(Level.INFO, false, "stall\n");
+        Assertions.assertTrue(console.awaitStall());
+        return output;
+    }
+
+    private AsyncConsoleOutput newOutput(int capacity, AsyncConsoleOutput.OverflowPolicy policy, Duration summaryInterval)
+    {
+        channelOutput = new ConsoleChannelOutput(StandardCharsets.UTF_8, 1024, Duration.ofHours(1), console.channel("out: "), console.channel("err: "));
+        return new AsyncConsoleOutput(capacity, policy, summaryInterval, true, channelOutput);
+    }
+
+    private void close(AsyncConsoleOutput output) throws InterruptedException
+    {
+        output.close();
+        channelOutput.close();
+    }
+
+    /**
+     * Records the lines written to stdout and stderr. Stalls on the first write until {@link #release()}.
+     */
+    private static final class Console
+    {
+        private final StringBuilder lines = new StringBuilder();
+        private final CountDownLatch stalled = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private boolean lineStart = true;
+
+        boolean awaitStall() throws InterruptedException
+        {
+            return stalled.await(5, TimeUnit.SECONDS);
+        }
+
+        void release()
+        {
+            released.countDown();
+        }
+
+        synchronized String lines()
+        {
+            return lines.toString();
+        }
+
+        WritableByteChannel channel(String prefix)
+        {
+            return new WritableByteChannel()
+            {
+                @Override
+                public int write(ByteBuffer src)
+                {
+                    stalled.countDown();
+                    try
+                    {
+                        released.await();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    int length = src.remaining();
+                    byte[] bytes = new byte[length];
+                    src.get(bytes);
+                    synchronized (Console.this)
+                    {
+                        // a full buffer may end within a line
+                        for (String line : new String(bytes, StandardCharsets.UTF_8).split("(?<=\n)"))
+                        {
+                            lines.append(lineStart ? prefix : "").append(line);
+                            lineStart = line.endsWith("\n");
+                        }
+                    }
+                    return length;
+                }
+
+                @Override
+                public boolean isOpen()
+                {
+                    return true;
+                }
+
+                @Override
+                public void close()
+                {
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+public class ConcurrentBatchTest
+{
+
+    @Test
+    void orderTest()
+    {
+        ConcurrentBatch<Integer> batch = new ConcurrentBatch<>();
+
+        Assertions.assertEquals(1, batch.add(1));
+        Assertions.assertEquals(2, batch.add(2));
+        Assertions.assertEquals(3, batch.add(3));
+        Assertions.assertEquals(3, batch.size());
+
+        Assertions.assertEquals(List.of(3, 2, 1), batch.takeAll());
+        Assertions.assertEquals(0, batch.size());
+        Assertions.assertTrue(batch.takeAll().isEmpty());
+    }
+
+    @Test
+    void concurrentAddTest() throws InterruptedException
+    {
+        final int threads = 8;
+        final int perThread = 10000;
+        ConcurrentBatch<Integer> batch = new ConcurrentBatch<>();
+        List<Integer> taken = new ArrayList<>();
+
+        List<Thread> producers = new ArrayList<>();
+        for (int t = 0; t < threads; t++)
+        {
+            final int offset = t * perThread;
+            Thread producer = new Thread(() -> {
+                for (int i = 0; i < perThread; i++)
+                {
+                    batch.add(offset + i);
+                }
+            });
+            producers.add(producer);
+            producer.start();
+        }
+
+        while (producers.stream().anyMatch(Thread::isAlive))
+        {
+            taken.addAll(batch.takeAll());
+        }
+        for (Thread producer : producers)
+        {
+            producer.join();
+        }
+        taken.addAll(batch.takeAll());
+
+        Assertions.assertEquals(threads * perThread, taken.size());
+        Assertions.assertEquals(threads * perThread, new HashSet<>(taken).size());
+    }
+}
@@ -0,0 +1,148 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+public class ConsoleChannelOutputTest
+{
+
+    @Test
+    void orderTest()
+    {
+        List<String> console = new ArrayList<>();
+        ConsoleChannelOutput output = new ConsoleChannelOutput(StandardCharsets.UTF_8, 1024, Duration.ofHours(1), channel(console, "out: "), channel(console, "err: "));
+
+        output.write(false, "first ");
+        output.write(false, "second ");
+        output.write(true, "third ");
+        output.write(false, "fourth äöü");
+        Assertions.assertEquals(List.of("out: first second ", "err: third "), console);
+
+        output.flush();
+        Assertions.assertEquals(List.of("out: first second ", "err: third ", "out: fourth äöü"), console);
+        output.close();
+    }
+
+    @Test
+    void fullBufferTest()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConsoleChannelOutput output = new ConsoleChannelOutput(StandardCharsets.UTF_8, 1024, Duration.ofHours(1), channel(out), channel(new ByteArrayOutputStream()));
+
+        String text = "x".repeat(1000) + System.lineSeparator();
+        for (int i = 0; i < 5; i++)
+        {
+            output.write(false, text);
+        }
+        // only full buffers have been written
+        Assertions.assertEquals(4 * 1024, out.size());
+
+        output.flush();
+        Assertions.assertEquals(text.repeat(5), out.toString(StandardCharsets.UTF_8));
+        output.close();
+    }
+
+    @Test
+    void flushIntervalTest() throws InterruptedException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConsoleChannelOutput output = new ConsoleChannelOutput(StandardCharsets.UTF_8, 1024, Duration.ofMillis(200), channel(out), channel(new ByteArrayOutputStream()));
+
+        output.write(false, "first");
+        Assertions.assertEquals(0, size(output, out));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (size(output, out) == 0 && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals("first", content(output, out));
+
+        // timed again after the buffer has been written
+        output.write(false, " second");
+        deadline = System.currentTimeMillis() + 5000;
+        while (size(output, out) == "first".length() && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10);
+        }
+        Assertions.assertEquals("first second", content(output, out));
+        output.close();
+    }
+
+    @Test
+    void closeTest()
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream err = new ByteArrayOutputStream();
+        ConsoleChannelOutput output = new ConsoleChannelOutput(StandardCharsets.UTF_8, 1024, Duration.ofHours(1), channel(out), channel(err));
+
+        output.write(false, "out");
+        output.write(true, "err");
+        output.close();
+        Assertions.assertEquals("out", out.toString(StandardCharsets.UTF_8));
+        Assertions.assertEquals("err", err.toString(StandardCharsets.UTF_8));
+
+        // closing twice doesn't release the reserved worker twice
+        output.close();
+    }
+
+    private static int size(ConsoleChannelOutput output, ByteArrayOutputStream out)
+    {
+        synchronized (output)
+        {
+            return out.size();
+        }
+    }
+
+    private static String content(ConsoleChannelOutput output, ByteArrayOutputStream out)
+    {
+        synchronized (output)
+        {
+            return out.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * @return channel, which adds each write as one element with the passed prefix
+     */
+    private static WritableByteChannel channel(List<String> console, String prefix)
+    {
+        return new WritableByteChannel()
+        {
+            @Override
+            public int write(ByteBuffer src)
+            {
+                int length = src.remaining();
+                byte[] bytes = new byte[length];
+                src.get(bytes);
+                console.add(prefix + new String(bytes, StandardCharsets.UTF_8));
+                return length;
+            }
+
+            @Override
+            public boolean isOpen()
+            {
+                return true;
+            }
+
+            @Override
+            public void close()
+            {
+            }
+        };
+    }
+
+    private static WritableByteChannel channel(ByteArrayOutputStream stream)
+    {
+        return Channels.newChannel(stream);
+    }
+
+}
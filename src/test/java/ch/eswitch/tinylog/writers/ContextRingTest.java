@@ -0,0 +1,111 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class ContextRingTest
+{
+
+    @Test
+    void takeTest()
+    {
+        ContextRing ring = new ContextRing(3);
+        Assertions.assertTrue(ring.take().isEmpty());
+
+        ring.record(newLogEntry("1"));
+        ring.record(newLogEntry("2"));
+        Assertions.assertEquals(List.of("1", "2"), messages(ring.take()));
+
+        // taken log entries are not attached again
+        Assertions.assertTrue(ring.take().isEmpty());
+
+        // only the newest log entries are kept
+        for (int i = 3; i <= 10; i++)
+        {
+            ring.record(newLogEntry(String.valueOf(i)));
+        }
+        Assertions.assertEquals(List.of("8", "9", "10"), messages(ring.take()));
+    }
+
+    @Test
+    void concurrentRecordTest() throws InterruptedException
+    {
+        ContextRing ring = new ContextRing(100);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 10000; i++)
+                {
+                    ring.record(newLogEntry(String.valueOf(i)));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+
+        List<LogEntry> tail = ring.take();
+        Assertions.assertEquals(100, tail.size());
+        Assertions.assertFalse(tail.contains(null));
+    }
+
+    @Test
+    void overtakenRecordTest() throws InterruptedException
+    {
+        // writers a full ring length apart share a slot, each thread must see its own log entries in order
+        ContextRing ring = new ContextRing(2);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++)
+        {
+            String thread = "t" + t + ":";
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 100000; i++)
+                {
+                    ring.record(newLogEntry(thread + i));
+                }
+            });
+            threads[t].start();
+        }
+
+        boolean alive = true;
+        while (alive)
+        {
+            Map<String, Integer> last = new HashMap<>();
+            for (String message : messages(ring.take()))
+            {
+                String thread = message.substring(0, message.indexOf(':') + 1);
+                int i = Integer.parseInt(message.substring(thread.length()));
+                Integer previous = last.put(thread, i);
+                Assertions.assertTrue(previous == null || previous < i, message + " after " + previous);
+            }
+
+            alive = false;
+            for (Thread thread : threads)
+            {
+                alive |= thread.isAlive();
+            }
+        }
+    }
+
+    private static List<String> messages(List<LogEntry> logEntries)
+    {
+        return logEntries.stream().map(LogEntry::getMessage).collect(Collectors.toList());
+    }
+
+    private static LogEntry newLogEntry(String message)
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), null, ContextRingTest.class.getName(), "newLogEntry", null, 0, null, Level.DEBUG, message, null);
+    }
+
+}
@@ -0,0 +1,201 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import javax.crypto.AEADBadTagException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+public class EncryptingFileConverterTest
+{
+
+    @Test
+    void roundTripTest() throws Exception
+    {
+        KeyPair keyPair = newKeyPair();
+        EncryptingFileConverter converter = new EncryptingFileConverter(keyPair.getPublic(), 1024);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder();
+
+        converter.open("test.log");
+        for (int i = 0; i < 500; i++)
+        {
+            String line = "log entry " + i + "\n";
+            expected.append(line);
+            file.write(converter.write(line.getBytes(StandardCharsets.UTF_8)));
+            if (i % 100 == 0)
+            {
+                file.write(converter.flush());
+            }
+        }
+        file.write(converter.finish());
+        converter.close();
+
+        Assertions.assertFalse(new String(file.toByteArray(), StandardCharsets.ISO_8859_1).contains("log entry"));
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        boolean complete = new EncryptedLogDecryptor(keyPair.getPrivate()).decrypt(new ByteArrayInputStream(file.toByteArray()), decrypted);
+
+        Assertions.assertTrue(complete);
+        Assertions.assertEquals(expected.toString(), new String(decrypted.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void continuedFileTest() throws Exception
+    {
+        KeyPair keyPair = newKeyPair();
+        EncryptingFileConverter converter = new EncryptingFileConverter(keyPair.getPublic(), 1024);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+
+        converter.open("test.log");
+        file.write(converter.write("first\n".getBytes(StandardCharsets.UTF_8)));
+        file.write(converter.finish());
+        converter.close();
+
+        // existing log file is continued
+        converter.open("test.log");
+        file.write(converter.write("second\n".getBytes(StandardCharsets.UTF_8)));
+        file.write(converter.flush());
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        boolean complete = new EncryptedLogDecryptor(keyPair.getPrivate()).decrypt(new ByteArrayInputStream(file.toByteArray()), decrypted);
+
+        Assertions.assertFalse(complete, "last chunk of second part is missing");
+        Assertions.assertEquals("first\nsecond\n", new String(decrypted.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void manipulatedFileTest() throws Exception
+    {
+        KeyPair keyPair = newKeyPair();
+        EncryptingFileConverter converter = new EncryptingFileConverter(keyPair.getPublic(), 1024);
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+
+        converter.open("test.log");
+        file.write(converter.write("secret\n".getBytes(StandardCharsets.UTF_8)));
+        file.write(converter.finish());
+
+        byte[] data = file.toByteArray();
+        data[data.length - 20] ^= 1;
+
+        Assertions.assertThrows(AEADBadTagException.class,
+                                () -> new EncryptedLogDecryptor(keyPair.getPrivate()).decrypt(new ByteArrayInputStream(data), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void tornChunkTest() throws Exception
+    {
+        KeyPair keyPair = newKeyPair();
+        EncryptingFileConverter converter = new EncryptingFileConverter(keyPair.getPublic(), 1024);
+        Path file = Files.createTempFile("encrypted", ".log");
+
+        // crash while the second chunk is written
+        converter.open(file.toString());
+        Files.write(file, converter.write("first\n".getBytes(StandardCharsets.UTF_8)), StandardOpenOption.APPEND);
+        Files.write(file, converter.flush(), StandardOpenOption.APPEND);
+        converter.write("torn\n".getBytes(StandardCharsets.UTF_8));
+        byte[] torn = converter.flush();
+        Files.write(file, Arrays.copyOf(torn, torn.length - 3), StandardOpenOption.APPEND);
+        converter.close();
+
+        // restart continues the log file
+        converter.open(file.toString());
+        Files.write(file, converter.write("second\n".getBytes(StandardCharsets.UTF_8)), StandardOpenOption.APPEND);
+        Files.write(file, converter.finish(), StandardOpenOption.APPEND);
+        converter.close();
+
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        boolean complete = new EncryptedLogDecryptor(keyPair.getPrivate()).decrypt(Files.newInputStream(file), decrypted);
+        Files.delete(file);
+
+        Assertions.assertFalse(complete, "first part has no last chunk");
+        Assertions.assertEquals("first\nsecond\n", new String(decrypted.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void invalidChunkLengthTest() throws Exception
+    {
+        KeyPair keyPair = newKeyPair();
+        EncryptingFileConverter converter = new EncryptingFileConverter(keyPair.getPublic(), 1024);
+
+        converter.open("test.log");
+        ByteArrayOutputStream file = new ByteArrayOutputStream();
+        file.write(converter.write("secret\n".getBytes(StandardCharsets.UTF_8)));
+        file.write(converter.flush());
+        byte[] data = file.toByteArray();
+        int lengthPosition = data.length - "secret\n".length() - EncryptingFileConverter.TAG_LENGTH - 4;
+        EncryptedLogDecryptor decryptor = new EncryptedLogDecryptor(keyPair.getPrivate());
+
+        ByteBuffer.wrap(data).putInt(lengthPosition, -1);
+        IOException e = Assertions.assertThrows(IOException.class, () -> decryptor.decrypt(new ByteArrayInputStream(data), new ByteArrayOutputStream()));
+        Assertions.assertEquals("invalid chunk length -1", e.getMessage());
+
+        // length beyond end of file is an incomplete chunk, nothing is allocated for it
+        ByteBuffer.wrap(data).putInt(lengthPosition, Integer.MAX_VALUE);
+        Assertions.assertFalse(decryptor.decrypt(new ByteArrayInputStream(data), new ByteArrayOutputStream()));
+    }
+
+    @Test
+    void unbufferedWriterTest() throws Exception
+    {
+        KeyPair keyPair = newKeyPair();
+        Path directory = Files.createTempDirectory("encrypted");
+        Path publicKey = directory.resolve("public.der");
+        Files.write(publicKey, keyPair.getPublic().getEncoded());
+        Path file = directory.resolve("test.log");
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("file", file.toString());
+        properties.put("format", "{message}");
+        properties.put("convert", EncryptingFileConverter.NAME);
+        properties.put(EncryptingFileConverter.PROPERTY_PUBLIC_KEY, publicKey.toString());
+        properties.put(EncryptingFileConverter.PROPERTY_CHUNK_SIZE, "1024");
+        MaskedRollingFileWriter writer = new MaskedRollingFileWriter(properties);
+
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+        {
+            String message = "log entry " + i;
+            writer.write(new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), EncryptingFileConverterTest.class.getName(), "test", null, -1,
+                                      null, Level.INFO, message, null));
+            expected.append(message).append(System.lineSeparator());
+        }
+
+        // only full chunks are written, not one chunk per log entry
+        int header = EncryptingFileConverter.MAGIC.length + 1 + 2 + 256 + EncryptingFileConverter.NONCE_PREFIX_LENGTH;
+        int chunk = EncryptingFileConverter.CHUNK_HEADER_LENGTH + 1024 + EncryptingFileConverter.TAG_LENGTH;
+        Assertions.assertEquals(header + expected.length() / 1024 * chunk, Files.size(file));
+
+        writer.close();
+        ByteArrayOutputStream decrypted = new ByteArrayOutputStream();
+        Assertions.assertTrue(new EncryptedLogDecryptor(keyPair.getPrivate()).decrypt(new ByteArrayInputStream(Files.readAllBytes(file)), decrypted));
+        Assertions.assertEquals(expected.toString(), new String(decrypted.toByteArray(), StandardCharsets.UTF_8));
+
+        Files.delete(file);
+        Files.delete(publicKey);
+        Files.delete(directory);
+    }
+
+    private static KeyPair newKeyPair() throws Exception
+    {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        return generator.generateKeyPair();
+    }
+}
@@ -0,0 +1,113 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compares {@link MaskedRollingFileWriter} with {@link EncryptingFileConverter} against the default
+ * {@link org.tinylog.converters.NopFileConverter}<br/>
+ * Not part of the default build, run with {@code mvn test -Dtest=EncryptionBenchmark}. Both converters are measured
+ * with buffered and unbuffered output after a warm-up, alternately and with a garbage collection before each run, the
+ * fastest run of each counts.
+ */
+public class EncryptionBenchmark
+{
+    private static final int ENTRIES = 1_000_000;
+    private static final int ROUNDS = 20;
+
+    @Test
+    void overheadBenchmark() throws Exception
+    {
+        Path directory = Files.createTempDirectory("benchmark");
+        Path publicKey = directory.resolve("public.der");
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keyPair = generator.generateKeyPair();
+        Files.write(publicKey, keyPair.getPublic().getEncoded());
+
+        // about 200 bytes per rendered log entry
+        LogEntry logEntry = new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), EncryptionBenchmark.class.getName(), "overheadBenchmark",
+                                         null, -1, null, Level.INFO, "x".repeat(140), null);
+
+        // warm up all code paths before measuring
+        for (boolean buffered : new boolean[] {true, false})
+        {
+            run(directory.resolve("warmup-plain.log"), null, buffered, logEntry);
+            run(directory.resolve("warmup-encrypted.log"), publicKey, buffered, logEntry);
+        }
+
+        for (boolean buffered : new boolean[] {true, false})
+        {
+            long plain = Long.MAX_VALUE;
+            long encrypted = Long.MAX_VALUE;
+            for (int round = 0; round < ROUNDS; round++)
+            {
+                // alternate order, so neither converter always runs with the garbage of the other
+                for (int i = 0; i < 2; i++)
+                {
+                    if ((round + i) % 2 == 0)
+                    {
+                        plain = Math.min(plain, run(directory.resolve("plain-" + round + ".log"), null, buffered, logEntry));
+                    }
+                    else
+                    {
+                        encrypted = Math.min(encrypted, run(directory.resolve("encrypted-" + round + ".log"), publicKey, buffered, logEntry));
+                    }
+                }
+            }
+
+            System.out.printf("%s: nop converter: %,d ns per entry, encrypted: %,d ns per entry, overhead %.1f%%%n", buffered ? "buffered" : "unbuffered", plain / ENTRIES,
+                              encrypted / ENTRIES, 100.0 * (encrypted - plain) / plain);
+        }
+
+        try (Stream<Path> files = Files.list(directory))
+        {
+            files.forEach(file -> file.toFile().delete());
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * @return nanoseconds to write all log entries
+     */
+    private static long run(Path file, Path publicKey, boolean buffered, LogEntry logEntry) throws Exception
+    {
+        System.gc();
+
+        Map<String, String> properties = new HashMap<>();
+        properties.put("file", file.toString());
+        properties.put("format", "{date: yyyy-MM-dd HH:mm:ss.SSS} [{thread}] {class}.{method}() {level}: {message}");
+        properties.put("buffered", String.valueOf(buffered));
+        if (publicKey != null)
+        {
+            properties.put("convert", EncryptingFileConverter.NAME);
+            properties.put(EncryptingFileConverter.PROPERTY_PUBLIC_KEY, publicKey.toString());
+        }
+
+        MaskedRollingFileWriter writer = new MaskedRollingFileWriter(properties);
+        long start = System.nanoTime();
+        for (int i = 0; i < ENTRIES; i++)
+        {
+            writer.write(logEntry);
+        }
+        writer.close();
+        long elapsed = System.nanoTime() - start;
+
+        Assertions.assertTrue(Files.size(file) > ENTRIES * 100L);
+        Files.delete(file);
+        return elapsed;
+    }
+
+}
@@ -0,0 +1,76 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.util.Collections;
+import java.util.List;
+
+public class FoldedFormatPatternTest
+{
+
+    @Test
+    void exceptionPositionTest()
+    {
+        FoldedFormatPattern pattern = FoldedFormatPattern.parse("{level}: {exception} <end>", null, new StackTraceFolder(List.of("org.framework.")));
+
+        String rendered = pattern.render(newLogEntry("message", newException()), null);
+
+        Assertions.assertTrue(rendered.startsWith("ERROR: java.lang.IllegalStateException: failed"), rendered);
+        Assertions.assertTrue(rendered.endsWith("at com.app.Main.main(Main.java:40) <end>" + System.lineSeparator()), rendered);
+        Assertions.assertTrue(rendered.contains("... 2 framework frames folded"), rendered);
+        Assertions.assertFalse(rendered.contains("message"), rendered);
+    }
+
+    @Test
+    void messageTest()
+    {
+        FoldedFormatPattern pattern = FoldedFormatPattern.parse("{level}: {message}", null, new StackTraceFolder(List.of("org.framework.")));
+
+        Assertions.assertEquals("ERROR: message: java.lang.IllegalStateException: failed", pattern.render(newLogEntry("message", newException()), null).split(
+                System.lineSeparator())[0]);
+        Assertions.assertEquals("ERROR: message" + System.lineSeparator(), pattern.render(newLogEntry("message", null), null));
+    }
+
+    @Test
+    void throwableFilterTest()
+    {
+        FoldedFormatPattern pattern = FoldedFormatPattern.parse("{message}", "strip: org.framework", new StackTraceFolder(List.of("org.framework.")));
+
+        String rendered = pattern.render(newLogEntry(null, newException()), null);
+
+        Assertions.assertTrue(rendered.contains("com.app.Service.run"), rendered);
+        Assertions.assertFalse(rendered.contains("org.framework"), rendered);
+        Assertions.assertFalse(rendered.contains("folded"), rendered);
+    }
+
+    @Test
+    void withoutExceptionTokenTest()
+    {
+        StackTraceFolder folder = new StackTraceFolder(List.of());
+        Assertions.assertNull(FoldedFormatPattern.parse("{level}: {message-only}", null, folder));
+        Assertions.assertNull(FoldedFormatPattern.parse("{level}: {{message}|indent=4}", null, folder));
+        Assertions.assertNotNull(FoldedFormatPattern.parse(null, null, folder));
+    }
+
+    private static Exception newException()
+    {
+        Exception e = new IllegalStateException("failed");
+        e.setStackTrace(new StackTraceElement[] {
+                new StackTraceElement("com.app.Service", "run", "Service.java", 10),
+                new StackTraceElement("org.framework.Proxy", "invoke", "Proxy.java", 20),
+                new StackTraceElement("org.framework.Chain", "next", "Chain.java", 30),
+                new StackTraceElement("com.app.Main", "main", "Main.java", 40)});
+        return e;
+    }
+
+    private static LogEntry newLogEntry(String message, Throwable exception)
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), FoldedFormatPatternTest.class.getName(), "test", null, -1, null,
+                            Level.ERROR, message, exception);
+    }
+
+}
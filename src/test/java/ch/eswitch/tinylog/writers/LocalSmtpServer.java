@@ -0,0 +1,156 @@
+package ch.eswitch.tinylog.writers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal in-process SMTP server for tests<br/>
+ * Accepts every mail without authentication and keeps the received messages in memory. Can delay each mail to
+ * simulate a slow SMTP server.
+ */
+final class LocalSmtpServer implements AutoCloseable
+{
+    private final ServerSocket serverSocket;
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final long delayMillis;
+
+    LocalSmtpServer() throws IOException
+    {
+        this(0);
+    }
+
+    /**
+     * @param delayMillis delay in milliseconds before a received mail is acknowledged
+     * @throws IOException server socket can't be opened
+     */
+    LocalSmtpServer(long delayMillis) throws IOException
+    {
+        this.delayMillis = delayMillis;
+        serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+
+        Thread acceptor = new Thread(this::accept, "local-smtp-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * @return local port
+     */
+    int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * @return received messages including headers
+     */
+    List<String> getMessages()
+    {
+        return messages;
+    }
+
+    /**
+     * @param count expected number of messages
+     * @param timeout timeout in milliseconds
+     * @return {@code true} if at least count messages have been received
+     * @throws InterruptedException interrupted while waiting
+     */
+    boolean awaitMessages(int count, long timeout) throws InterruptedException
+    {
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (messages.size() < count)
+        {
+            if (System.nanoTime() - end >= 0)
+            {
+                return false;
+            }
+            Thread.sleep(50);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        serverSocket.close();
+    }
+
+    private void accept()
+    {
+        while (!serverSocket.isClosed())
+        {
+            try
+            {
+                Socket socket = serverSocket.accept();
+                Thread session = new Thread(() -> handle(socket), "local-smtp-session");
+                session.setDaemon(true);
+                session.start();
+            }
+            catch (IOException e)
+            {
+                // server closed
+            }
+        }
+    }
+
+    private void handle(Socket socket)
+    {
+        try (Socket s = socket)
+        {
+            BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+            OutputStream out = s.getOutputStream();
+            reply(out, "220 localhost ESMTP");
+
+            String line;
+            while ((line = in.readLine()) != null)
+            {
+                String command = line.length() < 4 ? line.toUpperCase() : line.substring(0, 4).toUpperCase();
+                switch (command)
+                {
+                    case "EHLO":
+                        reply(out, "250-localhost\r\n250 8BITMIME");
+                        break;
+                    case "DATA":
+                        reply(out, "354 end data with <CR><LF>.<CR><LF>");
+                        StringBuilder message = new StringBuilder();
+                        while ((line = in.readLine()) != null && !line.equals("."))
+                        {
+                            message.append(line.startsWith(".") ? line.substring(1) : line).append("\r\n");
+                        }
+                        if (delayMillis > 0)
+                        {
+                            Thread.sleep(delayMillis);
+                        }
+                        messages.add(message.toString());
+                        reply(out, "250 OK");
+                        break;
+                    case "QUIT":
+                        reply(out, "221 bye");
+                        return;
+                    default:
+                        reply(out, "250 OK");
+                }
+            }
+        }
+        catch (IOException | InterruptedException e)
+        {
+            // connection closed by client
+        }
+    }
+
+    private static void reply(OutputStream out, String reply) throws IOException
+    {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+}
@@ -0,0 +1,49 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.util.List;
+
+public class LogEntryAggregatorTest
+{
+
+    @Test
+    void aggregateTest()
+    {
+        LogEntryAggregator aggregator = new LogEntryAggregator(10);
+
+        for (int i = 0; i < 1000; i++)
+        {
+            aggregator.add(newLogEntry("connection refused", new IllegalStateException("relay down")));
+        }
+        aggregator.add(newLogEntry("connection refused", new IllegalArgumentException("relay down")));
+        aggregator.add(newLogEntry("disk full", null));
+
+        Assertions.assertEquals(3, aggregator.size());
+
+        List<LogEntryAggregator.Aggregate> aggregates = aggregator.takeAll();
+        Assertions.assertEquals(3, aggregates.size());
+        Assertions.assertEquals(1002, aggregates.stream().mapToLong(LogEntryAggregator.Aggregate::getCount).sum());
+        Assertions.assertEquals(0, aggregator.size());
+    }
+
+    @Test
+    void maxSizeTest()
+    {
+        LogEntryAggregator aggregator = new LogEntryAggregator(2);
+
+        Assertions.assertEquals(1, aggregator.add(newLogEntry("a", null)));
+        Assertions.assertEquals(2, aggregator.add(newLogEntry("b", null)));
+        Assertions.assertEquals(0, aggregator.add(newLogEntry("c", null)));
+        Assertions.assertEquals(2, aggregator.add(newLogEntry("a", null)));
+    }
+
+    private static LogEntry newLogEntry(String message, Throwable exception)
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), null, LogEntryAggregatorTest.class.getName(), "newLogEntry", null, 0, null, Level.ERROR, message, exception);
+    }
+}
@@ -0,0 +1,64 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPInputStream;
+
+public class MailBodyTest
+{
+
+    @Test
+    void textTest()
+    {
+        MailBody body = new MailBody(100);
+        body.append("first\n").append("äöü\n".getBytes(StandardCharsets.UTF_8));
+        body.finish();
+
+        Assertions.assertFalse(body.isAttachment());
+        Assertions.assertEquals("first\näöü\n", body.getText());
+
+        // without threshold, body is never attached
+        MailBody unlimited = new MailBody(0);
+        unlimited.append(new String(new char[100000]));
+        unlimited.finish();
+        Assertions.assertFalse(unlimited.isAttachment());
+    }
+
+    @Test
+    void attachmentTest() throws IOException
+    {
+        MailBody body = new MailBody(20);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+        {
+            String line = "log entry " + i + " äöü\n";
+            expected.append(line);
+            if (i % 2 == 0)
+            {
+                body.append(line);
+            }
+            else
+            {
+                body.append(line.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        body.finish();
+
+        Assertions.assertTrue(body.isAttachment());
+        Assertions.assertFalse(body.isIncomplete());
+        Assertions.assertEquals("", body.getText());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(body.getAttachment())))
+        {
+            Assertions.assertEquals(expected.toString(), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        MailBody.delete(body.getAttachment());
+        Assertions.assertFalse(Files.exists(body.getAttachment()));
+    }
+
+}
@@ -0,0 +1,89 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+public class MailRateLimiterTest
+{
+    private static final long MINUTE = TimeUnit.MINUTES.toNanos(1);
+
+    @Test
+    void tokenBucketTest()
+    {
+        TokenBucket bucket = TokenBucket.parse("3/PT1H");
+        long now = System.nanoTime();
+
+        // burst of capacity, then one token per 20 minutes
+        Assertions.assertTrue(bucket.tryConsume(now));
+        Assertions.assertTrue(bucket.tryConsume(now));
+        Assertions.assertTrue(bucket.tryConsume(now));
+        Assertions.assertFalse(bucket.tryConsume(now));
+        Assertions.assertEquals(3.0, bucket.getUsed(now), 0.01);
+        Assertions.assertEquals(20 * MINUTE, bucket.nanosUntilToken(now));
+
+        Assertions.assertFalse(bucket.tryConsume(now + 19 * MINUTE));
+        Assertions.assertTrue(bucket.tryConsume(now + 20 * MINUTE));
+        Assertions.assertFalse(bucket.tryConsume(now + 20 * MINUTE));
+        Assertions.assertEquals(0.0, bucket.getUsed(now + 120 * MINUTE), 0.01);
+        Assertions.assertEquals(0, bucket.nanosUntilToken(now + 120 * MINUTE));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> TokenBucket.parse("3"));
+    }
+
+    @Test
+    void levelTest()
+    {
+        TokenBucket[] levels = new TokenBucket[Level.values().length];
+        levels[Level.ERROR.ordinal()] = new TokenBucket(2, Duration.ofHours(1));
+        MailRateLimiter limiter = new MailRateLimiter(null, levels, null, Duration.ofHours(1));
+        long now = System.nanoTime();
+
+        Assertions.assertTrue(limiter.limitsLevels());
+        Assertions.assertTrue(limiter.tryAcquireEntry(Level.ERROR, now));
+        Assertions.assertTrue(limiter.tryAcquireEntry(Level.ERROR, now));
+        Assertions.assertFalse(limiter.tryAcquireEntry(Level.ERROR, now));
+        Assertions.assertTrue(limiter.tryAcquireEntry(Level.WARN, now));
+        Assertions.assertEquals(1, limiter.getSuppressed(Level.ERROR));
+        Assertions.assertEquals(0, limiter.getSuppressed(Level.WARN));
+
+        // mails are not limited
+        Assertions.assertEquals(0, limiter.tryAcquireMail(now));
+    }
+
+    @Test
+    void adaptiveIntervalTest()
+    {
+        Duration sendInterval = Duration.ofSeconds(30);
+        MailRateLimiter limiter = new MailRateLimiter(new TokenBucket(4, Duration.ofHours(1)), new TokenBucket[Level.values().length], sendInterval, Duration
+                .ofMinutes(3));
+        long now = System.nanoTime();
+
+        // low load keeps send interval
+        Assertions.assertEquals(0, limiter.tryAcquireMail(now));
+        limiter.onSent(now);
+        Assertions.assertEquals(sendInterval, limiter.getInterval());
+
+        // sustained load stretches send interval up to maximum
+        Assertions.assertEquals(0, limiter.tryAcquireMail(now));
+        Assertions.assertEquals(0, limiter.tryAcquireMail(now));
+        limiter.onSent(now);
+        Assertions.assertEquals(MailRateLimiter.MIN_STRETCHED_INTERVAL, limiter.getInterval());
+        Assertions.assertEquals(0, limiter.tryAcquireMail(now));
+        limiter.onSent(now);
+        Assertions.assertEquals(Duration.ofMinutes(2), limiter.getInterval());
+        Assertions.assertTrue(limiter.tryAcquireMail(now) > 0);
+        limiter.onSent(now);
+        Assertions.assertEquals(Duration.ofMinutes(3), limiter.getInterval());
+
+        // interval shrinks back after load has decreased
+        limiter.onSent(now + 120 * MINUTE);
+        Assertions.assertEquals(Duration.ofSeconds(90), limiter.getInterval());
+        limiter.onSent(now + 120 * MINUTE);
+        Assertions.assertEquals(sendInterval, limiter.getInterval());
+    }
+
+}
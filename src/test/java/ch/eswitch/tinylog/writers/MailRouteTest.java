@@ -0,0 +1,94 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public class MailRouteTest
+{
+
+    @Test
+    void matchesTest()
+    {
+        MailRoute any = new MailRoute(null, null, null, null, null, null, null);
+        Assertions.assertTrue(any.matches(newLogEntry("com.example.Foo", null, Level.TRACE)));
+
+        MailRoute level = new MailRoute("level", Level.ERROR, null, null, null, null, null);
+        Assertions.assertTrue(level.matches(newLogEntry("com.example.Foo", null, Level.ERROR)));
+        Assertions.assertFalse(level.matches(newLogEntry("com.example.Foo", null, Level.WARN)));
+
+        MailRoute tag = new MailRoute("tag", null, Collections.singleton("security"), null, null, null, null);
+        Assertions.assertTrue(tag.matches(newLogEntry("com.example.Foo", "security", Level.INFO)));
+        Assertions.assertFalse(tag.matches(newLogEntry("com.example.Foo", "audit", Level.INFO)));
+        Assertions.assertFalse(tag.matches(newLogEntry("com.example.Foo", null, Level.INFO)));
+
+        MailRoute classes = new MailRoute("classes", Level.WARN, null, Arrays.asList("com.example.payment", "com.example.billing."), null, null, null);
+        Assertions.assertTrue(classes.matches(newLogEntry("com.example.payment.Card", null, Level.WARN)));
+        Assertions.assertTrue(classes.matches(newLogEntry("com.example.billing.Invoice", null, Level.ERROR)));
+        Assertions.assertFalse(classes.matches(newLogEntry("com.example.payment.Card", null, Level.INFO)));
+        Assertions.assertFalse(classes.matches(newLogEntry("com.example.Foo", null, Level.ERROR)));
+        Assertions.assertFalse(classes.matches(newLogEntry(null, null, Level.ERROR)));
+    }
+
+    @Test
+    void routeTest() throws Exception
+    {
+        String uuid = UUID.randomUUID().toString();
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            Map<String, String> properties = new HashMap<>();
+            properties.put("format", "{level}: {message}");
+            properties.put("route.security.tag", "security");
+            properties.put("route.security.to", "security@example.com");
+            properties.put("route.security.subject", "Security alert " + uuid);
+            properties.put("simplejavamail.smtp.host", "127.0.0.1");
+            properties.put("simplejavamail.smtp.port", String.valueOf(server.getPort()));
+            properties.put("simplejavamail.transportstrategy", "SMTP");
+            properties.put("simplejavamail.defaults.from.address", "tinylog@example.com");
+            properties.put("simplejavamail.defaults.to.address", "admin@example.com");
+            properties.put("simplejavamail.defaults.subject", "Default " + uuid);
+
+            SimpleMailWriter writer = new SimpleMailWriter(properties);
+            writer.write(newLogEntry("com.example.Foo", "security", Level.ERROR, "login failed"));
+            writer.write(newLogEntry("com.example.Foo", null, Level.ERROR, "disk full"));
+            writer.close();
+
+            List<String> messages = server.getMessages();
+            Assertions.assertEquals(2, messages.size());
+            String security = messages.stream().filter(m -> m.contains("login failed")).findFirst().orElseThrow();
+            String other = messages.stream().filter(m -> m.contains("disk full")).findFirst().orElseThrow();
+
+            // matching log entry is sent over its route only
+            Assertions.assertTrue(security.contains("security@example.com"));
+            Assertions.assertFalse(security.contains("admin@example.com"));
+            Assertions.assertTrue(security.contains("Subject: Security alert " + uuid));
+            Assertions.assertFalse(security.contains("disk full"));
+
+            // log entry without matching route falls back to the default route
+            Assertions.assertTrue(other.contains("admin@example.com"));
+            Assertions.assertFalse(other.contains("security@example.com"));
+            Assertions.assertTrue(other.contains("Subject: Default " + uuid));
+            Assertions.assertFalse(other.contains("login failed"));
+        }
+    }
+
+    private static LogEntry newLogEntry(String className, String tag, Level level)
+    {
+        return newLogEntry(className, tag, level, "message");
+    }
+
+    private static LogEntry newLogEntry(String className, String tag, Level level, String message)
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), null, className, "matchesTest", null, 0, tag, level, message, null);
+    }
+
+}
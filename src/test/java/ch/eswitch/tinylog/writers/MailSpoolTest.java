@@ -0,0 +1,77 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+public class MailSpoolTest
+{
+
+    @Test
+    void rotateTest() throws IOException
+    {
+        Path directory = Files.createTempDirectory("spool");
+        MailSpool spool = new MailSpool(directory);
+        Assertions.assertTrue(spool.getRecovered().isEmpty());
+        Assertions.assertTrue(spool.rotate().isEmpty());
+
+        spool.append(bytes("first\n"));
+        spool.append(bytes("second\n"));
+        List<Path> segments = spool.rotate();
+        Assertions.assertEquals(1, segments.size());
+        Assertions.assertEquals("first\nsecond\n", MailSpool.read(segments.get(0)));
+
+        spool.append(bytes("third\n"));
+        List<Path> next = spool.rotate();
+        Assertions.assertNotEquals(segments, next);
+
+        spool.delete(segments);
+        spool.delete(next);
+        Assertions.assertFalse(Files.exists(segments.get(0)));
+        Assertions.assertFalse(Files.exists(next.get(0)));
+        spool.close();
+    }
+
+    @Test
+    void recoverTest() throws IOException
+    {
+        Path directory = Files.createTempDirectory("spool");
+        MailSpool spool = new MailSpool(directory);
+        spool.append(bytes("sent\n"));
+        spool.delete(spool.rotate());
+        spool.append(bytes("pending 1\n"));
+        spool.rotate();
+        spool.append(bytes("pending 2 äöü\n"));
+
+        spool.close();
+
+        MailSpool recovered = new MailSpool(directory);
+        List<Path> segments = recovered.getRecovered();
+        Assertions.assertEquals(2, segments.size());
+
+        // simulate crash while writing a record
+        Files.write(segments.get(1), new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        Assertions.assertEquals("pending 1\n", MailSpool.read(segments.get(0)));
+        Assertions.assertEquals("pending 2 äöü\n", MailSpool.read(segments.get(1)));
+
+        // new segments don't overwrite recovered segments
+        recovered.append(bytes("new\n"));
+        List<Path> next = recovered.rotate();
+        Assertions.assertFalse(segments.contains(next.get(0)));
+        Assertions.assertEquals("pending 1\n", MailSpool.read(segments.get(0)));
+        recovered.close();
+    }
+
+    private static byte[] bytes(String s)
+    {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,59 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class MailWriterMetricsTest
+{
+
+    @Test
+    void mbeanTest() throws Exception
+    {
+        MailRoute route = new MailRoute(null, null, null, null, null, null, null);
+        route.bufferedLogEntries.add(newLogEntry(), 100, 10, 1000);
+        MailWriterMetrics metrics = new MailWriterMetrics(List.of(route), new SendCircuitBreaker(SendCircuitBreaker.DEFAULT_DELAY, SendCircuitBreaker.DEFAULT_MAX_DELAY,
+                                                                                                 SendCircuitBreaker.DEFAULT_THRESHOLD), null);
+        metrics.accepted.increment();
+        metrics.onSend(true, TimeUnit.MILLISECONDS.toNanos(50));
+        metrics.onSend(true, TimeUnit.MILLISECONDS.toNanos(300));
+        metrics.onSend(false, TimeUnit.SECONDS.toNanos(90));
+
+        metrics.register("test");
+        ObjectName name = metrics.getObjectName();
+        Assertions.assertNotNull(name);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Assertions.assertEquals(1L, server.getAttribute(name, "BufferedEntries"));
+        Assertions.assertEquals(1L, server.getAttribute(name, "AcceptedEntries"));
+        Assertions.assertEquals(2L, server.getAttribute(name, "SentMails"));
+        Assertions.assertEquals(1L, server.getAttribute(name, "FailedSends"));
+        Assertions.assertEquals("CLOSED", server.getAttribute(name, "CircuitBreakerState"));
+        Assertions.assertEquals(90000L, server.getAttribute(name, "SendLatencyMaxMillis"));
+
+        long[] counts = (long[]) server.getAttribute(name, "SendLatencyCounts");
+        Assertions.assertEquals(((long[]) server.getAttribute(name, "SendLatencyBoundsMillis")).length + 1, counts.length);
+        Assertions.assertEquals(1, counts[0]);
+        Assertions.assertEquals(1, counts[2]);
+        Assertions.assertEquals(1, counts[counts.length - 1]);
+
+        metrics.unregister();
+        Assertions.assertFalse(server.isRegistered(name));
+    }
+
+    private static LogEntry newLogEntry()
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), MailWriterMetricsTest.class.getName(), "mbeanTest", null, 0, null,
+                            Level.ERROR, "message", null);
+    }
+
+}
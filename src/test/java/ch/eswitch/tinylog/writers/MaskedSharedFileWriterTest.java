@@ -0,0 +1,96 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MaskedSharedFileWriterTest
+{
+
+    @Test
+    void appendTest() throws IOException
+    {
+        Path file = Files.createTempFile("shared", ".log");
+        Files.write(file, List.of("previous"));
+
+        MaskedSharedFileWriter first = new MaskedSharedFileWriter(properties(file, true));
+        MaskedSharedFileWriter second = new MaskedSharedFileWriter(properties(file, true));
+        first.write(newLogEntry("first password=secret"));
+        second.write(newLogEntry("second"));
+        first.write(newLogEntry("third"));
+        first.close();
+        second.write(newLogEntry("fourth"));
+        second.close();
+
+        Assertions.assertEquals(List.of("previous", "first password=******", "second", "third", "fourth"), Files.readAllLines(file));
+        Files.delete(file);
+    }
+
+    @Test
+    void truncateTest() throws IOException
+    {
+        Path file = Files.createTempFile("shared", ".log");
+        Files.write(file, List.of("previous"));
+
+        // only the first writer truncates, the second one opens the file while it's in use
+        MaskedSharedFileWriter first = new MaskedSharedFileWriter(properties(file, false));
+        first.write(newLogEntry("first"));
+        MaskedSharedFileWriter second = new MaskedSharedFileWriter(properties(file, false));
+        second.write(newLogEntry("second"));
+        second.close();
+        first.close();
+        Assertions.assertEquals(List.of("first", "second"), Files.readAllLines(file));
+
+        // file isn't in use anymore
+        MaskedSharedFileWriter third = new MaskedSharedFileWriter(properties(file, false));
+        third.write(newLogEntry("third"));
+        third.close();
+        Assertions.assertEquals(List.of("third"), Files.readAllLines(file));
+        Files.delete(file);
+    }
+
+    @Test
+    void bufferedTest() throws IOException
+    {
+        Path file = Files.createTempFile("shared", ".log");
+
+        Map<String, String> properties = properties(file, false);
+        properties.put("buffered", "true");
+        MaskedSharedFileWriter writer = new MaskedSharedFileWriter(properties);
+        writer.write(newLogEntry("buffered"));
+        Assertions.assertEquals(0, Files.size(file));
+        writer.flush();
+        Assertions.assertEquals("buffered" + System.lineSeparator(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+        writer.close();
+        Files.delete(file);
+    }
+
+    private static Map<String, String> properties(Path file, boolean append)
+    {
+        Map<String, String> p = new HashMap<>();
+        p.put("file", file.toString());
+        p.put("format", "{message}");
+        p.put("append", String.valueOf(append));
+        p.put(MaskedWriterUtil.PROPERTY_FILTER_PREFIX, "password=");
+        p.put(MaskedWriterUtil.PROPERTY_FILTER_FIXED_LENGTH, "6");
+        return p;
+    }
+
+    private static LogEntry newLogEntry(String message)
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), MaskedSharedFileWriterTest.class.getName(), "test", null, -1, null,
+                            Level.INFO, message, null);
+    }
+
+}
@@ -88,6 +88,27 @@ public class MaskedWriterUtilTest
         maskMessage(maskedWriterUtil, "<ele>12", "<ele>**");
     }
 
+    @Test
+    void keyPrefixTest()
+    {
+        Map<String, String> p = new HashMap<>();
+
+        // include/exclude filter of SimpleMailWriter must not be used as masking filter
+        p.put(MaskedWriterUtil.PROPERTY_FILTER_PREFIX, "<ele>");
+        p.put(MaskedWriterUtil.PROPERTY_FILTER_SUFFIX, "<ele/>");
+        p.put("mask.prefix1", "pw=");
+        p.put("mask.fixedlength1", "4");
+        p.put("mask.prefix2", "<secret>");
+        p.put("mask.suffix2", "</secret>");
+        p.put("mask.replacecharacter", "x");
+
+        MaskedWriterUtil maskedWriterUtil = new MaskedWriterUtil(p, "mask.");
+
+        maskMessage(maskedWriterUtil, "abc<ele>123456<ele/>xyz");
+        maskMessage(maskedWriterUtil, "login pw=123456 ok", "login pw=xxxx56 ok");
+        maskMessage(maskedWriterUtil, "<secret>abc</secret>", "<secret>xxx</secret>");
+    }
+
     private static void maskMessage(MaskedWriterUtil maskedWriterUtil, String message)
     {
         maskMessage(maskedWriterUtil, message, message);
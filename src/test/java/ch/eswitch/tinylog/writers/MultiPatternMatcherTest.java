@@ -0,0 +1,47 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+public class MultiPatternMatcherTest
+{
+
+    @Test
+    void matchTest()
+    {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of(List.of("include1", "Error", "UnsupportedOperationException"), List.of("exclude1", "he")));
+
+        Assertions.assertEquals(0, matcher.match(null, 0));
+        Assertions.assertEquals(0, matcher.match("", 0));
+        Assertions.assertEquals(0, matcher.match("nothing to see", 0));
+        Assertions.assertEquals(1, matcher.match("an ERROR occurred", 0));
+        Assertions.assertEquals(1, matcher.match("java.lang.UnsupportedOperationException", 0));
+        Assertions.assertEquals(2, matcher.match("EXCLUDE1", 0));
+        Assertions.assertEquals(3, matcher.match("include1 and exclude1", 0));
+        Assertions.assertEquals(2, matcher.match("tHe", 0));
+        Assertions.assertEquals(2, matcher.match("ininclude", 0) | matcher.match("xhex", 0));
+    }
+
+    @Test
+    void overlappingTest()
+    {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of(List.of("abcd"), List.of("bc")));
+
+        Assertions.assertEquals(2, matcher.match("abce", 0));
+        Assertions.assertEquals(3, matcher.match("xabcdx", 0));
+        Assertions.assertEquals(2, matcher.match("xabcdx", 2));
+        Assertions.assertEquals(1, new MultiPatternMatcher(List.of(List.of("aab"), List.of())).match("aaab", 0));
+    }
+
+    @Test
+    void nonAsciiTest()
+    {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(List.of(List.of("Größe"), List.of("ÄNDERUNG")));
+
+        Assertions.assertEquals(1, matcher.match("ungültige GRÖSSE, größe", 0));
+        Assertions.assertEquals(2, matcher.match("änderung", 0));
+        Assertions.assertEquals(0, matcher.match("groesse", 0));
+    }
+}
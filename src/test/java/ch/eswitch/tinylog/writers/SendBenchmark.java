@@ -0,0 +1,83 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.simplejavamail.api.email.Email;
+import org.simplejavamail.api.mailer.Mailer;
+import org.simplejavamail.api.mailer.config.TransportStrategy;
+import org.simplejavamail.email.EmailBuilder;
+import org.simplejavamail.mailer.MailerBuilder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares blocking sends on platform and virtual worker threads against a slow SMTP server<br/>
+ * Not part of the default build, run with {@code mvn test -Dtest=SendBenchmark}. Virtual threads require Java 21,
+ * before Java 24 they are pinned to their carrier thread while Jakarta Mail blocks in synchronized methods. On Java 21,
+ * the virtual threads take about 50 times longer, therefore they are opt-in, see {@link WorkerThreads}.
+ */
+public class SendBenchmark
+{
+    private static final int SENDS = 200;
+    private static final long SERVER_DELAY_MILLIS = 1000;
+
+    @Test
+    void platformThreadsBenchmark() throws Exception
+    {
+        // one platform thread per concurrent send, as reserved by a writer with sendconcurrency=200
+        run("platform", WorkerThreads.platform(SENDS));
+    }
+
+    @Test
+    void virtualThreadsBenchmark() throws Exception
+    {
+        Assumptions.assumeTrue(Runtime.version().feature() >= 21, "virtual threads require Java 21");
+
+        // test classes run on Java 11 classes, multi-release classes are only used from the JAR
+        run("virtual", (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null));
+    }
+
+    private void run(String mode, ExecutorService executor) throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer(SERVER_DELAY_MILLIS))
+        {
+            Mailer mailer = MailerBuilder.withSMTPServer("127.0.0.1", server.getPort())
+                                         .withTransportStrategy(TransportStrategy.SMTP)
+                                         .withConnectionPoolMaxSize(SENDS)
+                                         .buildMailer();
+
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            int threadCount = threads.getThreadCount();
+            threads.resetPeakThreadCount();
+            long start = System.nanoTime();
+
+            List<Future<?>> sends = new ArrayList<>();
+            for (int i = 0; i < SENDS; i++)
+            {
+                Email email = EmailBuilder.startingBlank().from("tinylog@example.com").to("admin@example.com").withSubject("benchmark " + i).withPlainText("benchmark")
+                                          .buildEmail();
+                sends.add(executor.submit(() -> mailer.sendMail(email)));
+            }
+            for (Future<?> send : sends)
+            {
+                send.get();
+            }
+
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%s threads: %d sends with %d ms server delay in %,d ms, %d additional platform threads%n", mode, SENDS, SERVER_DELAY_MILLIS, elapsed,
+                              threads.getPeakThreadCount() - threadCount);
+
+            Assertions.assertTrue(server.awaitMessages(SENDS, 10000));
+            executor.shutdown();
+            mailer.shutdownConnectionPool();
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+public class SendCircuitBreakerTest
+{
+
+    @Test
+    void backoffTest()
+    {
+        SendCircuitBreaker breaker = new SendCircuitBreaker(Duration.ofSeconds(1), Duration.ofSeconds(10), 100);
+
+        long now = 0;
+        Assertions.assertTrue(breaker.tryAcquire(now));
+
+        // jittered delay between half and full backoff, doubled per failure, limited by max delay
+        long[] backoffs = {1000, 2000, 4000, 8000, 10000, 10000};
+        for (long backoff : backoffs)
+        {
+            long delay = breaker.onFailure(now);
+            Assertions.assertTrue(delay >= backoff / 2 && delay <= backoff, "delay " + delay + " for backoff " + backoff);
+            Assertions.assertFalse(breaker.tryAcquire(now + delay - 1));
+            Assertions.assertTrue(breaker.tryAcquire(now + delay));
+            now += delay;
+        }
+
+        Assertions.assertEquals(SendCircuitBreaker.State.CLOSED, breaker.getState());
+        Assertions.assertEquals(backoffs.length, breaker.getConsecutiveFailures());
+
+        breaker.onSuccess();
+        Assertions.assertEquals(0, breaker.getConsecutiveFailures());
+        Assertions.assertEquals(backoffs.length, breaker.getFailures());
+        Assertions.assertTrue(breaker.tryAcquire(now));
+    }
+
+    @Test
+    void circuitBreakerTest()
+    {
+        SendCircuitBreaker breaker = new SendCircuitBreaker(Duration.ofSeconds(1), Duration.ofMinutes(1), 2);
+
+        breaker.onFailure(0);
+        Assertions.assertEquals(SendCircuitBreaker.State.CLOSED, breaker.getState());
+        long delay = breaker.onFailure(0);
+        Assertions.assertEquals(SendCircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertEquals(1, breaker.getOpened());
+        Assertions.assertFalse(breaker.tryAcquire(delay - 1));
+
+        // only one trial send
+        Assertions.assertTrue(breaker.tryAcquire(delay));
+        Assertions.assertEquals(SendCircuitBreaker.State.HALF_OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.tryAcquire(delay));
+
+        // trial not started
+        breaker.release();
+        Assertions.assertEquals(SendCircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertTrue(breaker.tryAcquire(delay));
+
+        // trial failed
+        long next = delay + breaker.onFailure(delay);
+        Assertions.assertEquals(SendCircuitBreaker.State.OPEN, breaker.getState());
+        Assertions.assertFalse(breaker.tryAcquire(next - 1));
+        Assertions.assertTrue(breaker.tryAcquire(next));
+
+        // trial succeeded
+        Assertions.assertTrue(breaker.onSuccess());
+        Assertions.assertEquals(SendCircuitBreaker.State.CLOSED, breaker.getState());
+        Assertions.assertTrue(breaker.tryAcquire(next));
+        Assertions.assertTrue(breaker.tryAcquire(next));
+    }
+
+}
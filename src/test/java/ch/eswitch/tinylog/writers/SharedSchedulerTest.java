@@ -0,0 +1,63 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SharedSchedulerTest
+{
+
+    @Test
+    void scheduleTest() throws InterruptedException
+    {
+        SharedScheduler scheduler = SharedScheduler.getInstance();
+        CountDownLatch latch = new CountDownLatch(3);
+        long start = System.nanoTime();
+
+        scheduler.schedule(latch::countDown, 0, TimeUnit.MILLISECONDS);
+        scheduler.schedule(latch::countDown, 150, TimeUnit.MILLISECONDS);
+        scheduler.schedule(latch::countDown, 300, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assertions.assertTrue(elapsed >= 300, "expired after " + elapsed + " ms");
+    }
+
+    @Test
+    void cancelTest() throws InterruptedException
+    {
+        SharedScheduler scheduler = SharedScheduler.getInstance();
+        AtomicInteger cancelled = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+
+        SharedScheduler.Timeout timeout = scheduler.schedule(cancelled::incrementAndGet, 100, TimeUnit.MILLISECONDS);
+        timeout.cancel();
+        Assertions.assertTrue(timeout.isDone());
+        scheduler.schedule(latch::countDown, 300, TimeUnit.MILLISECONDS);
+
+        Assertions.assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, cancelled.get());
+    }
+
+    @Test
+    void idleTest() throws InterruptedException
+    {
+        SharedScheduler scheduler = SharedScheduler.getInstance();
+        CountDownLatch first = new CountDownLatch(1);
+        scheduler.schedule(first::countDown, 10, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(first.await(5, TimeUnit.SECONDS));
+
+        // timer parks while idle and restarts when a new timeout is scheduled
+        Thread.sleep(3 * SharedScheduler.TICK_MILLIS);
+        CountDownLatch second = new CountDownLatch(1);
+        long start = System.nanoTime();
+        scheduler.schedule(second::countDown, 200, TimeUnit.MILLISECONDS);
+        Assertions.assertTrue(second.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        Assertions.assertTrue(elapsed >= 200 && elapsed < 1000, "expired after " + elapsed + " ms");
+    }
+
+}
@@ -0,0 +1,391 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class SimpleMailWriterDispatchTest
+{
+    private static final int THREADS = 8;
+    private static final int ENTRIES = 250;
+
+    private final String uuid = UUID.randomUUID().toString();
+
+    @Test
+    void coalescingTest() throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            SimpleMailWriter writer = new SimpleMailWriter(properties(server));
+
+            // connection test has finished meanwhile, first log entry is still sent immediately
+            Thread.sleep(500);
+            writer.write(newLogEntry("start #"));
+            Assertions.assertTrue(server.awaitMessages(1, 10000));
+
+            // log entries within send interval are sent with one mail per flush
+            writeConcurrently(writer, 0);
+            Thread.sleep(500);
+            Assertions.assertEquals(1, server.getMessages().size());
+            writer.flush();
+            Assertions.assertTrue(server.awaitMessages(2, 10000));
+
+            // pending log entries are sent on close
+            writeConcurrently(writer, THREADS);
+            writer.close();
+            Assertions.assertEquals(3, server.getMessages().size());
+
+            Map<String, Integer> received = new HashMap<>();
+            for (String message : server.getMessages())
+            {
+                Matcher matcher = Pattern.compile("entry (\\d+)-(\\d+) #").matcher(message);
+                while (matcher.find())
+                {
+                    received.merge(matcher.group(1) + "-" + matcher.group(2), 1, Integer::sum);
+                }
+            }
+            Assertions.assertEquals(2 * THREADS * ENTRIES, received.size());
+            Assertions.assertTrue(received.values().stream().allMatch(count -> count == 1), "duplicate log entries");
+        }
+    }
+
+    @Test
+    void precontextOrderTest() throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            Map<String, String> properties = properties(server);
+            properties.put("precontext.size", "4");
+            properties.put("filter.exclude", "excluded");
+            SimpleMailWriter writer = new SimpleMailWriter(properties);
+
+            Thread.sleep(500);
+            writer.write(newLogEntry("start #"));
+            Assertions.assertTrue(server.awaitMessages(1, 10000));
+
+            writer.write(newLogEntry(Level.DEBUG, "context-a"));
+            writer.write(newLogEntry("excluded entry"));
+            writer.write(newLogEntry("first error"));
+            writer.write(newLogEntry("plain error"));
+            writer.write(newLogEntry(Level.DEBUG, "context-b"));
+            writer.write(newLogEntry("second error"));
+            writer.close();
+
+            Assertions.assertEquals(2, server.getMessages().size());
+            String message = server.getMessages().get(1);
+            Assertions.assertFalse(message.contains("excluded entry"));
+
+            // newest first, context follows its log entry
+            int second = message.indexOf("second error");
+            int contextB = message.indexOf("context-b");
+            int plain = message.indexOf("plain error");
+            int first = message.indexOf("first error");
+            int contextA = message.indexOf("context-a");
+            Assertions.assertTrue(second >= 0 && second < contextB && contextB < plain && plain < first && first < contextA, message);
+        }
+    }
+
+    @Test
+    void precontextAggregateTest() throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            Map<String, String> properties = properties(server);
+            properties.put("precontext.size", "4");
+            properties.put("aggregate", "true");
+            SimpleMailWriter writer = new SimpleMailWriter(properties);
+
+            Thread.sleep(500);
+            writer.write(newLogEntry("start #"));
+            Assertions.assertTrue(server.awaitMessages(1, 10000));
+
+            writer.write(newLogEntry(Level.DEBUG, "context-a"));
+            writer.write(newLogEntry("repeated error"));
+            writer.write(newLogEntry(Level.DEBUG, "context-b"));
+            writer.write(newLogEntry("repeated error"));
+            writer.close();
+
+            Assertions.assertEquals(2, server.getMessages().size());
+            String message = server.getMessages().get(1);
+
+            // context of the first log entry is rendered with the aggregate
+            int repeated = message.indexOf("repeated error");
+            int contextA = message.indexOf("context-a");
+            Assertions.assertTrue(repeated >= 0 && repeated < contextA, message);
+        }
+    }
+
+    @Test
+    void stretchedIntervalTest() throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            Map<String, String> properties = properties(server);
+            properties.remove("sendinterval");
+            properties.put("ratelimit.mails", "4/PT1H");
+            SimpleMailWriter writer = new SimpleMailWriter(properties);
+
+            Thread.sleep(500);
+            for (int i = 1; i <= 3; i++)
+            {
+                writer.write(newLogEntry("mail " + i + " #"));
+                Assertions.assertTrue(server.awaitMessages(i, 10000));
+            }
+
+            // third mail stretched the interval, which already applies to the interval started by it
+            writer.write(newLogEntry("mail 4 #"));
+            Thread.sleep(1000);
+            Assertions.assertEquals(3, server.getMessages().size());
+
+            writer.close();
+            Assertions.assertEquals(4, server.getMessages().size());
+        }
+    }
+
+    @Test
+    void sendLevelTest() throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            SimpleMailWriter writer = startTrigger(server, "sendlevel", "error");
+
+            writer.write(newLogEntry(Level.WARN, "below send level"));
+            Thread.sleep(500);
+            Assertions.assertEquals(1, server.getMessages().size());
+
+            writer.write(newLogEntry(Level.ERROR, "send level"));
+            Assertions.assertTrue(server.awaitMessages(2, 10000));
+            Assertions.assertTrue(server.getMessages().get(1).contains("below send level"));
+            writer.close();
+        }
+    }
+
+    @Test
+    void sendEntriesTest() throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            SimpleMailWriter writer = startTrigger(server, "sendentries", "5");
+
+            for (int i = 1; i < 5; i++)
+            {
+                writer.write(newLogEntry("entry " + i));
+            }
+            Thread.sleep(500);
+            Assertions.assertEquals(1, server.getMessages().size());
+
+            writer.write(newLogEntry("entry 5"));
+            Assertions.assertTrue(server.awaitMessages(2, 10000));
+            Assertions.assertTrue(server.getMessages().get(1).contains("entry 1"));
+            writer.close();
+        }
+    }
+
+    @Test
+    void sendBytesTest() throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            SimpleMailWriter writer = startTrigger(server, "sendbytes", "4000");
+
+            writer.write(newLogEntry("small"));
+            Thread.sleep(500);
+            Assertions.assertEquals(1, server.getMessages().size());
+
+            writer.write(newLogEntry("large " + "x".repeat(2000)));
+            Assertions.assertTrue(server.awaitMessages(2, 10000));
+            Assertions.assertTrue(server.getMessages().get(1).contains("small"));
+            writer.close();
+        }
+    }
+
+    /**
+     * @return writer with a send trigger, whose first mail has been sent, so the send interval is running
+     */
+    private SimpleMailWriter startTrigger(LocalSmtpServer server, String trigger, String value) throws InterruptedException
+    {
+        Map<String, String> properties = properties(server);
+        properties.put(trigger, value);
+        SimpleMailWriter writer = new SimpleMailWriter(properties);
+
+        Thread.sleep(500);
+        writer.write(newLogEntry("start #"));
+        Assertions.assertTrue(server.awaitMessages(1, 10000));
+        return writer;
+    }
+
+    @Test
+    void prerenderTest() throws Exception
+    {
+        Assertions.assertEquals(renderedBody(false), renderedBody(true));
+    }
+
+    /**
+     * @return body of a mail with log entries with exception and masked message
+     */
+    private String renderedBody(boolean prerender) throws Exception
+    {
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            Map<String, String> properties = properties(server);
+            properties.put("format", "{level} {class-name}.{method}: {message}");
+            properties.put("prerender", String.valueOf(prerender));
+            properties.put("mask.prefix1", "password=");
+            properties.put("mask.fixedlength1", "6");
+            SimpleMailWriter writer = new SimpleMailWriter(properties);
+
+            Thread.sleep(500);
+            writer.write(newLogEntry("start #"));
+            Assertions.assertTrue(server.awaitMessages(1, 10000));
+
+            Exception cause = new java.io.IOException("cause");
+            writer.write(newLogEntry(Level.WARN, "first password=secret1 <"));
+            writer.write(new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), SimpleMailWriterDispatchTest.class.getName(), "render", null,
+                                      -1, null, Level.ERROR, "failed", new IllegalStateException("state", cause)));
+            writer.write(newLogEntry(Level.ERROR, "> last"));
+            writer.close();
+
+            Assertions.assertEquals(2, server.getMessages().size());
+            String message = server.getMessages().get(1);
+            Assertions.assertFalse(message.contains("secret1"));
+            return message.substring(message.indexOf("> last"), message.indexOf("first password=") + "first password=".length() + 10);
+        }
+    }
+
+    @Test
+    void threadCountTest() throws Exception
+    {
+        SharedScheduler scheduler = SharedScheduler.getInstance();
+        Assumptions.assumeTrue(scheduler.worker() instanceof ThreadPoolExecutor, "virtual worker threads are not limited");
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) scheduler.worker();
+
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            List<SimpleMailWriter> writers = new ArrayList<>();
+            for (int i = 0; i < 3; i++)
+            {
+                Map<String, String> properties = properties(server);
+                properties.put("sendentries", "50");
+                properties.put("sendconcurrency", "2");
+                writers.add(new SimpleMailWriter(properties));
+            }
+            int limit = pool.getMaximumPoolSize();
+            Assertions.assertTrue(limit >= 3 * 3, "workers reserved for 3 writers: " + limit);
+
+            // more load doesn't start more threads
+            int light = maxWorkerThreads(writers, 1);
+            int heavy = maxWorkerThreads(writers, 4);
+            Assertions.assertTrue(light > 0 && light <= limit, "worker threads: " + light);
+            Assertions.assertTrue(heavy <= limit, "worker threads: " + heavy);
+            Assertions.assertEquals(limit, pool.getMaximumPoolSize());
+
+            for (SimpleMailWriter writer : writers)
+            {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * @return maximum number of live worker threads while writing to all writers concurrently
+     */
+    private int maxWorkerThreads(List<SimpleMailWriter> writers, int load) throws InterruptedException
+    {
+        AtomicInteger max = new AtomicInteger();
+        AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread(() -> {
+            while (running.get())
+            {
+                int workers = (int) Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().startsWith("tinylog-writers-worker-")).count();
+                max.accumulateAndGet(workers, Math::max);
+                Thread.onSpinWait();
+            }
+        });
+        sampler.start();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS * load; t++)
+        {
+            SimpleMailWriter writer = writers.get(t % writers.size());
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < ENTRIES; i++)
+                {
+                    writer.write(newLogEntry("load " + thread + "-" + i));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+        writers.forEach(SimpleMailWriter::flush);
+        Thread.sleep(500);
+
+        running.set(false);
+        sampler.join();
+        return max.get();
+    }
+
+    private void writeConcurrently(SimpleMailWriter writer, int firstThread) throws InterruptedException
+    {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = firstThread; t < firstThread + THREADS; t++)
+        {
+            int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < ENTRIES; i++)
+                {
+                    writer.write(newLogEntry("entry " + thread + "-" + i + " #"));
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads)
+        {
+            thread.join();
+        }
+    }
+
+    private Map<String, String> properties(LocalSmtpServer server)
+    {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("format", "{level}: {message}");
+        properties.put("sendinterval", "PT1H");
+        properties.put("simplejavamail.smtp.host", "127.0.0.1");
+        properties.put("simplejavamail.smtp.port", String.valueOf(server.getPort()));
+        properties.put("simplejavamail.transportstrategy", "SMTP");
+        properties.put("simplejavamail.defaults.from.address", "tinylog@example.com");
+        properties.put("simplejavamail.defaults.to.address", "admin@example.com");
+        properties.put("simplejavamail.defaults.subject", "dispatch test " + uuid);
+        return properties;
+    }
+
+    private static LogEntry newLogEntry(String message)
+    {
+        return newLogEntry(Level.ERROR, message);
+    }
+
+    private static LogEntry newLogEntry(Level level, String message)
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), SimpleMailWriterDispatchTest.class.getName(), "test", null, -1, null,
+                            level, message, null);
+    }
+
+}
@@ -0,0 +1,159 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class SimpleMailWriterSpoolTest
+{
+    private final String uuid = UUID.randomUUID().toString();
+
+    @Test
+    void replayTest() throws Exception
+    {
+        Path directory = Files.createTempDirectory("spool");
+
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            // first mail is sent immediately, further log entries wait for send interval
+            SimpleMailWriter crashed = new SimpleMailWriter(properties(server, directory));
+            crashed.write(newLogEntry("sent " + uuid));
+            Assertions.assertTrue(server.awaitMessages(1, 10000));
+            crashed.write(newLogEntry("pending " + uuid));
+            Assertions.assertTrue(isSpooled(directory, "pending " + uuid), "pending log entry not spooled on write");
+
+            // simulate crash: writer is never closed, its pending log entry is only in spool
+            Assertions.assertTrue(awaitSpool(directory, "pending " + uuid), "segment of sent mail not deleted");
+            Assertions.assertEquals(1, server.getMessages().size());
+
+            SimpleMailWriter restarted = new SimpleMailWriter(properties(server, directory));
+            Assertions.assertTrue(server.awaitMessages(2, 10000));
+            Assertions.assertTrue(server.getMessages().get(1).contains("pending " + uuid));
+            Assertions.assertFalse(server.getMessages().get(1).contains("sent " + uuid));
+
+            // spool is compacted after successful send
+            restarted.close();
+            try (Stream<Path> files = Files.list(directory))
+            {
+                Assertions.assertEquals(0, files.count());
+            }
+        }
+    }
+
+    @Test
+    void truncateTest() throws Exception
+    {
+        Path directory = Files.createTempDirectory("spool");
+
+        // spool of a previous run, larger than maxbytes
+        MailSpool spool = new MailSpool(directory);
+        for (int i = 0; i < 100; i++)
+        {
+            spool.append(String.format("entry %03d %s%n", i, uuid).getBytes(StandardCharsets.UTF_8));
+        }
+        spool.close();
+
+        try (LocalSmtpServer server = new LocalSmtpServer())
+        {
+            Map<String, String> properties = properties(server, directory);
+            properties.put("maxbytes", "4000");
+            SimpleMailWriter restarted = new SimpleMailWriter(properties);
+            Assertions.assertTrue(server.awaitMessages(1, 10000));
+            restarted.close();
+
+            String message = server.getMessages().get(0);
+            Assertions.assertTrue(message.contains("entry 000"));
+            Assertions.assertFalse(message.contains("entry 099"));
+            Assertions.assertTrue(message.contains("truncated"));
+
+            // truncated spool is not recovered again
+            try (Stream<Path> files = Files.list(directory))
+            {
+                Assertions.assertEquals(0, files.count());
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if a segment of the spool contains the text
+     */
+    private static boolean isSpooled(Path directory, String text) throws Exception
+    {
+        try (Stream<Path> files = Files.list(directory))
+        {
+            for (Path segment : files.collect(Collectors.toList()))
+            {
+                try
+                {
+                    if (MailSpool.read(segment).contains(text))
+                    {
+                        return true;
+                    }
+                }
+                catch (NoSuchFileException e)
+                {
+                    // segment of sent mail has been deleted meanwhile
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return {@code true} if the spool contains only one segment with the text, when segments of sent mails have
+     *         been deleted
+     */
+    private static boolean awaitSpool(Path directory, String text) throws Exception
+    {
+        long end = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < end)
+        {
+            try (Stream<Path> files = Files.list(directory))
+            {
+                List<Path> segments = files.collect(Collectors.toList());
+                if (segments.size() == 1 && MailSpool.read(segments.get(0)).contains(text))
+                {
+                    return true;
+                }
+            }
+            Thread.sleep(10);
+        }
+        return false;
+    }
+
+    private Map<String, String> properties(LocalSmtpServer server, Path directory)
+    {
+        Map<String, String> properties = new HashMap<>();
+        properties.put("format", "{level}: {message}");
+        properties.put("sendinterval", "PT1H");
+        properties.put("spool", directory.toString());
+        properties.put("simplejavamail.smtp.host", "127.0.0.1");
+        properties.put("simplejavamail.smtp.port", String.valueOf(server.getPort()));
+        properties.put("simplejavamail.transportstrategy", "SMTP");
+        properties.put("simplejavamail.defaults.from.address", "tinylog@example.com");
+        properties.put("simplejavamail.defaults.to.address", "admin@example.com");
+        properties.put("simplejavamail.defaults.subject", "spool test " + uuid);
+        return properties;
+    }
+
+    private static LogEntry newLogEntry(String message)
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), SimpleMailWriterSpoolTest.class.getName(), "replayTest", null, -1, null,
+                            Level.ERROR, message, null);
+    }
+
+}
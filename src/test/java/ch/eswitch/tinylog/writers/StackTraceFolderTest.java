@@ -0,0 +1,61 @@
+package ch.eswitch.tinylog.writers;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.throwable.ThrowableWrapper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StackTraceFolderTest
+{
+
+    @Test
+    void foldTest()
+    {
+        StackTraceFolder folder = new StackTraceFolder(List.of("org.framework."));
+
+        Exception e = new IllegalStateException("failed");
+        e.setStackTrace(new StackTraceElement[] {
+                new StackTraceElement("com.app.Service", "run", "Service.java", 10),
+                new StackTraceElement("org.framework.Proxy", "invoke", "Proxy.java", 20),
+                new StackTraceElement("org.framework.Chain", "next", "Chain.java", 30),
+                new StackTraceElement("com.app.Main", "main", "Main.java", 40)});
+
+        StringBuilder builder = new StringBuilder();
+        folder.append(builder, new ThrowableWrapper(e), null);
+        String trace = builder.toString();
+
+        Assertions.assertTrue(trace.contains("com.app.Service.run"), trace);
+        Assertions.assertTrue(trace.contains("com.app.Main.main"), trace);
+        Assertions.assertFalse(trace.contains("org.framework.Proxy"), trace);
+        Assertions.assertTrue(trace.contains("... 2 framework frames folded"), trace);
+    }
+
+    @Test
+    void backReferenceTest()
+    {
+        StackTraceFolder folder = new StackTraceFolder(List.of());
+        Map<StackTraceFolder.Fingerprint, Integer> renderedStacks = new HashMap<>();
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 3; i++)
+        {
+            folder.append(builder, new ThrowableWrapper(newException(i)), renderedStacks);
+        }
+        folder.append(builder, new ThrowableWrapper(new IllegalArgumentException("other")), renderedStacks);
+        String trace = builder.toString();
+
+        Assertions.assertTrue(trace.contains("IllegalStateException: failed 0 [stack #1]"), trace);
+        Assertions.assertTrue(trace.contains("IllegalStateException: failed 1 (same stack as #1)"), trace);
+        Assertions.assertTrue(trace.contains("IllegalStateException: failed 2 (same stack as #1)"), trace);
+        Assertions.assertTrue(trace.contains("IllegalArgumentException: other [stack #2]"), trace);
+        Assertions.assertTrue(trace.contains("Caused by: java.io.IOException: cause"), trace);
+    }
+
+    private static Exception newException(int i)
+    {
+        return new IllegalStateException("failed " + i, new java.io.IOException("cause"));
+    }
+}
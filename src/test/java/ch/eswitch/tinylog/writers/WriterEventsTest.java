@@ -0,0 +1,93 @@
+package ch.eswitch.tinylog.writers;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.tinylog.Level;
+import org.tinylog.core.LogEntry;
+import org.tinylog.runtime.PreciseTimestamp;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+public class WriterEventsTest
+{
+    private static final String MASK_EVENT = "ch.eswitch.tinylog.writers.Mask";
+
+    @Test
+    void maskEventTest() throws IOException
+    {
+        MaskedWriterUtil maskedWriterUtil = newMaskedWriterUtil();
+
+        try (Recording recording = new Recording())
+        {
+            recording.enable(MASK_EVENT).withThreshold(Duration.ZERO);
+            recording.start();
+            maskedWriterUtil.mask(newLogEntry("a<ele>1<ele/>b<ele>22<ele/>c"));
+            maskedWriterUtil.mask(newLogEntry("nothing to mask"));
+            recording.stop();
+
+            List<RecordedEvent> events = events(recording, MASK_EVENT);
+            Assertions.assertEquals(2, events.size());
+            Assertions.assertEquals(2, events.get(0).getInt("ruleHits"));
+            Assertions.assertEquals(1, events.get(0).getInt("filters"));
+            Assertions.assertEquals(0, events.get(1).getInt("ruleHits"));
+        }
+    }
+
+    @Test
+    void disabledByDefaultTest() throws IOException
+    {
+        MaskedWriterUtil maskedWriterUtil = newMaskedWriterUtil();
+
+        try (Recording recording = new Recording())
+        {
+            recording.start();
+            maskedWriterUtil.mask(newLogEntry("a<ele>1<ele/>b"));
+            recording.stop();
+
+            Assertions.assertTrue(events(recording, MASK_EVENT).isEmpty());
+        }
+    }
+
+    private static MaskedWriterUtil newMaskedWriterUtil()
+    {
+        Map<String, String> p = new HashMap<>();
+        p.put(MaskedWriterUtil.PROPERTY_FILTER_PREFIX, "<ele>");
+        p.put(MaskedWriterUtil.PROPERTY_FILTER_SUFFIX, "<ele/>");
+        return new MaskedWriterUtil(p);
+    }
+
+    private static List<RecordedEvent> events(Recording recording, String name) throws IOException
+    {
+        Path file = Files.createTempFile("recording", ".jfr");
+        try
+        {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file)
+                                .stream()
+                                .filter(e -> e.getEventType().getName().equals(name))
+                                .collect(Collectors.toList());
+        }
+        finally
+        {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static LogEntry newLogEntry(String message)
+    {
+        return new LogEntry(new PreciseTimestamp(), Thread.currentThread(), Collections.emptyMap(), WriterEventsTest.class.getName(), "test", null, -1, null,
+                            Level.ERROR, message, null);
+    }
+
+}